@@ -1,3 +1,9 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
 /**
  * File: A3.java
  *
@@ -8,22 +14,280 @@
 public class A3 {
 
     public static void main(String[] args) {
-        int M,N,qMax;
+        if(args.length>0 && args[0].equals("sweep")) {
+            runSweep(args);
+            return;
+        }
+        if(args.length>0 && args[0].equals("compare")) {
+            runComparison(args);
+            return;
+        }
+
+        int replications;
+        LineOptions options;
         try {
             //check user provided command args if not send them a quick message
-            M = getArgAsInt(args,0,"Did not provide a value of M");
-            N = getArgAsInt(args,1,"Did not provide a value of N");
-            qMax = getArgAsInt(args,2,"Did not provide a value of qMax");
+            int M = getArgAsInt(args,0,"Did not provide a value of M");
+            int N = getArgAsInt(args,1,"Did not provide a value of N");
+            int qMax = getArgAsInt(args,2,"Did not provide a value of qMax");
+            //the amount of replications is optional, a single run is the assignment behaviour
+            int positional = countPositional(args);
+            replications = positional>3 ? getArgAsInt(args,3,"Did not provide a value of replications") : 1;
+            options = parseOptions(new LineOptions(M,N,qMax),args,positional);
         } catch (IllegalArgumentException e) {
             System.out.println(e.getMessage());
             return;
         }
 
+        if(replications>1) {
+            //run independent replications on every core and report confidence intervals
+            System.out.println("Seed: "+options.getSeed());
+            Replications runner = new Replications(options,replications,options.getSeed());
+            try {
+                ReplicationSummary summary = runner.run();
+                summary.print();
+                if(options.getPercentiles().length>0) {
+                    summary.printLeadTimes(options.getPercentiles());
+                    summary.printWaitQuantiles(options.getQuantiles());
+                }
+            } catch (IllegalArgumentException e) {
+                //a line that cannot be split into the segments asked for
+                System.out.println(e.getMessage());
+            }
+            return;
+        }
+
         //create production line and run simulation
-        ProductionLine line = new ProductionLine();
-        line.buildProductionLine(M,N,qMax);
-        line.run();
-        line.printStatistics();
+        //the same stream as the first replication, so a single run can be repeated with -seed
+        System.out.println("Seed: "+options.getSeed());
+        ProductionLine line;
+        try {
+            line = options.run(new RandomStream(options.getSeed()));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if(options.isIntervals())
+            line.printIntervals();
+        else
+            line.printStatistics();
+        if(options.getTopRoutes()>0)
+            line.printRouteStats(options.getTopRoutes());
+        if(options.getPercentiles().length>0) {
+            line.printLeadTimes(options.getPercentiles());
+            line.printWaitQuantiles();
+        }
+    }
+
+    /**
+     * Counts the arguments before the first option. An option is a name starting with a dash such as -events.
+     *
+     * @param args The command line arguments
+     * @return The amount of positional arguments
+     */
+    private static int countPositional(String[] args) {
+        int count = 0;
+        while (count<args.length && !isOption(args[count]))
+            count++;
+        return count;
+    }
+
+    private static boolean isOption(String arg) {
+        return arg.length()>1 && arg.charAt(0)=='-' && Character.isLetter(arg.charAt(1));
+    }
+
+    /**
+     * Reads the options that follow the positional arguments. Each option is a name followed by a value, the options are
+     *   -events heap|calendar|reference   the future event list of the simulation
+     *   -routes k                         print the k most common routes and the widgets through each stage
+     *   -topology file                    simulate the line described in the file, see {@link Topology}
+     *   -seed n                           the master seed, by default the current time
+     *   -wake id|fifo|lifo                which stage a queue wakes first when several are waiting on it
+     *   -batch n                          draw the processing times of each stage n at a time
+     *   -service distribution             the distribution of processing times, see {@link ServiceTime}
+     *   -variance independent|common|antithetic
+     *                                     how the random streams of replications and scenarios are related
+     *   -time t                           how long each run is simulated for, 10000000 by default
+     *   -parallel n                       split each run into n segments that run on their own threads
+     *   -sync conservative|optimistic     how the segments of a split run are kept in step
+     *   -intervals none|batch             follow each statistic of a single run with a confidence interval from batch means
+     *   -warmup none|mser|t               delete the warm-up of each run, detected with MSER-5 or up to time t
+     *   -precision r                      stop each run once its confidence intervals are within r of the mean
+     *   -metrics throughput,starvation,queue
+     *                                     the statistics that must reach the precision, throughput by default
+     *   -percentiles p,p,...              print these percentiles of the lead time of the widgets and of the time they
+     *                                     wait in each queue, such as 50,90,99,99.9
+     *
+     * @param options The options to modify
+     * @param args The command line arguments
+     * @param start The index of the first option
+     * @return The modified options
+     * @throws IllegalArgumentException if an option is unknown, has no value or has an invalid value
+     */
+    private static LineOptions parseOptions(LineOptions options, String[] args, int start) {
+        for(int i=start;i<args.length;i+=2) {
+            if(!isOption(args[i]))
+                throw new IllegalArgumentException("Expected an option but got '"+args[i]+"'");
+            if(i+1>=args.length)
+                throw new IllegalArgumentException("Option "+args[i]+" requires a value");
+
+            String value = args[i+1];
+            switch (args[i]) {
+                case "-events":
+                    options.setEventList(value);
+                    break;
+                case "-seed":
+                    try {
+                        options.setSeed(Long.parseLong(value));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid value '"+value+"' for option -seed");
+                    }
+                    break;
+                case "-batch":
+                    options.setBatchSize(parseInt(args[i],value));
+                    break;
+                case "-service":
+                    options.setDistribution(value);
+                    break;
+                case "-variance":
+                    options.setVariance(value);
+                    break;
+                case "-time":
+                    try {
+                        options.setCompletionTime(Double.parseDouble(value));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid value '"+value+"' for option -time");
+                    }
+                    break;
+                case "-parallel":
+                    options.setSegments(parseInt(args[i],value));
+                    break;
+                case "-sync":
+                    options.setSynchronisation(value);
+                    break;
+                case "-precision":
+                    try {
+                        options.setPrecision(Double.parseDouble(value));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid value '"+value+"' for option -precision");
+                    }
+                    break;
+                case "-metrics":
+                    options.setMetrics(value);
+                    break;
+                case "-intervals":
+                    options.setIntervals(value);
+                    break;
+                case "-percentiles":
+                    options.setPercentiles(value);
+                    break;
+                case "-warmup":
+                    options.setWarmup(value);
+                    break;
+                case "-wake":
+                    options.setWakeOrder(value);
+                    break;
+                case "-routes":
+                    options.setTopRoutes(parseInt(args[i],value));
+                    break;
+                case "-topology":
+                    try {
+                        options.setTopology(Topology.load(value));
+                    } catch (IOException e) {
+                        throw new IllegalArgumentException("Could not read the topology '"+value+"': "+e.getMessage());
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option "+args[i]);
+            }
+        }
+        options.checkVariance();
+        return options;
+    }
+
+    /**
+     * Compares two scenarios with paired replications. This is used as
+     *   java A3 compare M N qMax M' N' qMax' replications [options]
+     * Every option applies to both scenarios.
+     *
+     * @param args The command line arguments, starting with "compare"
+     */
+    private static void runComparison(String[] args) {
+        Comparison comparison;
+        LineOptions options;
+        try {
+            if(countPositional(args)<8)
+                throw new IllegalArgumentException("Usage: java A3 compare M N qMax M' N' qMax' replications [options]");
+            options = parseOptions(new LineOptions(getArgAsInt(args,1,"Did not provide a value of M"),
+                    getArgAsInt(args,2,"Did not provide a value of N"),getArgAsInt(args,3,"Did not provide a value of qMax")),args,8);
+            LineOptions alternative = options.withScenario(getArgAsInt(args,4,"Did not provide a value of M'"),
+                    getArgAsInt(args,5,"Did not provide a value of N'"),getArgAsInt(args,6,"Did not provide a value of qMax'"));
+            comparison = new Comparison(options,alternative,getArgAsInt(args,7,"Did not provide a value of replications"),options.getSeed());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        System.out.println("Seed: "+options.getSeed());
+        comparison.run().print();
+    }
+
+    /**
+     * Runs a parameter sweep. This is used as
+     *   java A3 sweep [M values] [N values] [qMax values] [replications] [output.csv] [options]
+     * where each list of values is in the form accepted by {@link Sweep#parseValues(String)}. If the output is - then
+     * the rows are written to standard output.
+     *
+     * @param args The command line arguments, starting with "sweep"
+     */
+    private static void runSweep(String[] args) {
+        Sweep sweep;
+        String output;
+        try {
+            if(countPositional(args)<6)
+                throw new IllegalArgumentException("Usage: java A3 sweep [M values] [N values] [qMax values] [replications] [output.csv] [options]");
+            //the options are the same for every scenario, the values of M, N and qMax are replaced by the sweep
+            LineOptions options = parseOptions(new LineOptions(0,0,0),args,6);
+            sweep = new Sweep(options,Sweep.parseValues(args[1]),Sweep.parseValues(args[2]),Sweep.parseValues(args[3]),
+                    getArgAsInt(args,4,"Did not provide a value of replications"),options.getSeed());
+            output = args[5];
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        if(output.equals("-")) {
+            try {
+                sweep.run(new OutputStreamWriter(System.out));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                System.out.println(e.getMessage());
+            }
+            return;
+        }
+
+        try (Writer out = new BufferedWriter(new FileWriter(output))) {
+            sweep.run(out);
+        } catch (IOException e) {
+            System.out.println("Could not write to '"+output+"': "+e.getMessage());
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Parses the value of an option as an integer.
+     *
+     * @param option The name of the option
+     * @param value The value of the option
+     * @return The value as an integer
+     * @throws IllegalArgumentException if the value is not a number
+     */
+    private static int parseInt(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option "+option+" expects a number but got '"+value+"'");
+        }
     }
 
     /**
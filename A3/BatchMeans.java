@@ -0,0 +1,226 @@
+import java.util.Arrays;
+
+/**
+ * File: BatchMeans.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Standard errors from a single long run by the method of batch means. The run is cut into batches
+ * of equal length in simulated time, and one or more series, for example the time a stage spends working and blocked,
+ * are summed within each batch. Consecutive batches of a long enough length are close to independent, so the spread of
+ * the values of the batches gives the standard error of the figure over the whole run.
+ *
+ * Memory stays fixed by holding at most 32 batches. Once the run passes the end of the last batch each pair of
+ * neighbouring batches is merged into one of twice the length, leaving 16, so however long the run is it ends with
+ * between 16 and 32 batches whose length has grown with it. Adding an amount is a comparison against the end of the
+ * current batch and an array addition, so the stages, queues and warehouse feed it on every event.
+ *
+ * The batches start one unit of time long, so every batch means of a line double in step and can be merged, and the
+ * few doublings a long run needs cost nothing next to the events themselves.
+ *
+ * An amount is added to the batch its time falls in, and an interval such as a stretch of work is split between the
+ * batches it overlaps. Almost every interval is well inside the current batch, so splitting costs nothing extra.
+ */
+public class BatchMeans {
+
+    private static final int BATCHES = 32;
+
+    private final int seriesCount;
+    private final double initialWidth;
+    private double[] sums; //the amount of each series in each batch, indexed by batch*seriesCount + series
+    private double start; //when the first batch starts
+    private double width; //the length of every batch
+    private int current; //the batch being filled, every batch before it is complete
+    private double end; //when the current batch ends
+
+    /**
+     * Creates batch means whose batches start one unit of time long.
+     *
+     * @param seriesCount The amount of series summed in each batch
+     */
+    public BatchMeans(int seriesCount) {
+        this(seriesCount,1);
+    }
+
+    /**
+     * @param seriesCount The amount of series summed in each batch
+     * @param width The initial length of each batch. This must be positive.
+     */
+    public BatchMeans(int seriesCount, double width) {
+        if(!(width>0))
+            throw new IllegalArgumentException("The length of a batch must be positive");
+        this.seriesCount = seriesCount;
+        this.initialWidth = width;
+        this.sums = new double[BATCHES*seriesCount];
+        reset(0);
+    }
+
+    private BatchMeans(BatchMeans other) {
+        this.seriesCount = other.seriesCount;
+        this.initialWidth = other.initialWidth;
+        this.sums = other.sums.clone();
+        this.start = other.start;
+        this.width = other.width;
+        this.current = other.current;
+        this.end = other.end;
+    }
+
+    /**
+     * Adds an amount to a series.
+     *
+     * @param time When the amount happened. This must not be before the time of the last amount added.
+     * @param series The series
+     * @param amount The amount
+     */
+    public void add(double time, int series, double amount) {
+        if(time>=end)
+            advance(time);
+        sums[current*seriesCount+series] += amount;
+    }
+
+    /**
+     * Adds a rate over an interval to a series, split between the batches the interval overlaps, for example the time
+     * a stage spent working or the widgets in a queue over time. Any part before the first batch is left out.
+     *
+     * @param from When the interval began
+     * @param to When the interval ended. This must not be before the time of the last amount added.
+     * @param series The series
+     * @param rate The amount per unit of time
+     */
+    public void addInterval(double from, double to, int series, double rate) {
+        if(to>=end)
+            advance(to);
+        double batchStart = end - width;
+        if(from>=batchStart) {
+            sums[current*seriesCount+series] += rate*(to-from);
+            return;
+        }
+
+        sums[current*seriesCount+series] += rate*(to-batchStart);
+        for(int batch=current-1;batch>=0 && from<batchStart;batch--) {
+            double previousStart = start + batch*width;
+            sums[batch*seriesCount+series] += rate*(batchStart-Math.max(from,previousStart));
+            batchStart = previousStart;
+        }
+    }
+
+    private void advance(double time) {
+        while (time>=end) {
+            if(++current==BATCHES)
+                collapse();
+            end = start + (current+1)*width;
+        }
+    }
+
+    /**
+     * Merges each pair of neighbouring batches, doubling their length.
+     */
+    private void collapse() {
+        //the batch being filled is merged too, it becomes part of the new batch being filled
+        int merged = current/2;
+        for(int batch=0;batch<=merged;batch++) {
+            for(int series=0;series<seriesCount;series++) {
+                double first = 2*batch<BATCHES ? sums[2*batch*seriesCount+series] : 0;
+                double second = 2*batch+1<BATCHES ? sums[(2*batch+1)*seriesCount+series] : 0;
+                sums[batch*seriesCount+series] = first + second;
+            }
+        }
+        Arrays.fill(sums,(merged+1)*seriesCount,sums.length,0);
+        current = merged;
+        width *= 2;
+        end = start + (current+1)*width;
+    }
+
+    /**
+     * Completes every batch that ends by the given time. This is called at the end of a run, so that a series that has
+     * had nothing added for a while still has its empty batches counted.
+     *
+     * @param time The end of the run
+     */
+    public void close(double time) {
+        if(time>=end)
+            advance(time);
+    }
+
+    /**
+     * Forgets every batch, used to delete the warm-up of a run.
+     *
+     * @param time When the first batch starts
+     */
+    public void reset(double time) {
+        Arrays.fill(sums,0);
+        start = time;
+        width = initialWidth;
+        current = 0;
+        end = start + width;
+    }
+
+    /**
+     * Adds the batches of another run of the same length to these, used to merge the segments of a {@link ParallelLine}.
+     * The batches of whichever is shorter are merged until both have the same length.
+     *
+     * @param other Batch means with the same series and start
+     */
+    public void merge(BatchMeans other) {
+        BatchMeans copy = other.copy();
+        while (copy.width<width)
+            copy.collapse();
+        while (width<copy.width)
+            collapse();
+        for(int i=0;i<sums.length;i++)
+            sums[i] += copy.sums[i];
+        current = Math.max(current,copy.current);
+        end = start + (current+1)*width;
+    }
+
+    /**
+     * @return An independent copy, so an optimistic {@link ParallelLine} can roll the batches back
+     */
+    public BatchMeans copy() {
+        return new BatchMeans(this);
+    }
+
+    /**
+     * @return The amount of complete batches
+     */
+    public int getBatches() {
+        return current;
+    }
+
+    /**
+     * Summarises a weighted sum of series as a rate per unit of time in each complete batch, for example the fraction
+     * of time a stage is starved is 1 - working - blocked.
+     *
+     * @param constant The rate added to each batch
+     * @param weights The weight of each series
+     * @return The value of each complete batch, whose standard error is that of the rate over the run
+     */
+    public SampleStatistics summarise(double constant, double... weights) {
+        SampleStatistics batches = new SampleStatistics();
+        for(int batch=0;batch<current;batch++) {
+            double value = 0;
+            for(int series=0;series<seriesCount;series++)
+                value += weights[series]*sums[batch*seriesCount+series];
+            batches.add(constant + value/width);
+        }
+        return batches;
+    }
+
+    /**
+     * Summarises the ratio of two series in each complete batch, for example the time spent in a queue over the
+     * widgets that left it. A batch where the denominator is 0 is left out.
+     *
+     * @param numerator The series on top
+     * @param denominator The series below
+     * @return The value of each complete batch
+     */
+    public SampleStatistics summariseRatio(int numerator, int denominator) {
+        SampleStatistics batches = new SampleStatistics();
+        for(int batch=0;batch<current;batch++) {
+            double below = sums[batch*seriesCount+denominator];
+            if(below>0)
+                batches.add(sums[batch*seriesCount+numerator]/below);
+        }
+        return batches;
+    }
+}
@@ -0,0 +1,280 @@
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File: Bench.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Micro benchmarks for the simulation kernel. Each benchmark is run for several warm up iterations so
+ * the JIT has compiled the hot path, then for several measured iterations of a fixed length. The throughput of each
+ * measured iteration is treated as an observation, so the result is reported as a mean with a 95% confidence interval,
+ * along with the bytes allocated per operation on the benchmark thread.
+ *
+ * Run with
+ *   java Bench [filter] [milliseconds per iteration]
+ * where only benchmarks whose name contains the filter are run.
+ */
+public class Bench {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+
+    private static volatile long sink; //results are written here so the JIT cannot remove the work
+
+    /**
+     * A piece of work to measure. Each call does some amount of operations, for example the events of a whole run, and
+     * returns how many it did.
+     */
+    private interface Workload {
+        long run();
+    }
+
+    private static class Case {
+        private final String name;
+        private final String unit;
+        private final Workload workload;
+
+        private Case(String name, String unit, Workload workload) {
+            this.name = name;
+            this.unit = unit;
+            this.workload = workload;
+        }
+    }
+
+    public static void main(String[] args) {
+        String filter = args.length>0 ? args[0] : "";
+        long iterationNanos = 1000_000_000L;
+        if(args.length>1) {
+            try {
+                iterationNanos = Long.parseLong(args[1]) * 1000_000L;
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid amount of milliseconds '"+args[1]+"'");
+                return;
+            }
+        }
+
+        System.out.format("%-50s%-30s%-12s%n","Benchmark","Throughput","Alloc[B/op]");
+        for(Case benchmark : cases()) {
+            if(benchmark.name.contains(filter))
+                measure(benchmark,iterationNanos);
+        }
+    }
+
+    /**
+     * @return Every benchmark, in the order they are run
+     */
+    private static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+
+        //events per second of whole runs of the assignment line with each event list
+        for(String events : new String[]{"heap","calendar","reference"})
+            cases.add(lineCase("line/assignment M=1000 N=2000 qMax=5 "+events,Topology.assignment(),1000,2000,5,events,0));
+        cases.add(lineCase("line/assignment M=1000 N=500 qMax=1 heap",Topology.assignment(),1000,500,1,"heap",0));
+        cases.add(lineCase("line/assignment M=1000 N=2000 qMax=20 heap",Topology.assignment(),1000,2000,20,"heap",0));
+
+        //processing times drawn one at a time against drawn in blocks
+        for(int batch : new int[]{0,16,64,256}) {
+            cases.add(lineCase("line/batch="+batch+" assignment uniform",Topology.assignment(),1000,2000,5,"heap",batch));
+            LineOptions exponential = new LineOptions(1000,2000,5);
+            exponential.setDistribution("exponential");
+            exponential.setBatchSize(batch);
+            cases.add(lineCase("line/batch="+batch+" assignment exponential",exponential));
+        }
+
+        //longer lines, M is raised with the length so each run has around the same amount of events
+        for(int stations : new int[]{10,100,1000}) {
+            Topology topology = series(stations);
+            for(String events : new String[]{"heap","calendar"})
+                cases.add(lineCase("line/series-"+stations+" qMax=5 "+events,topology,10*stations,20*stations,5,events,0));
+        }
+
+        //one run split over threads, the range is kept below twice the mean so the segments have some lookahead
+        Topology chain = series(1000);
+        for(int segments : new int[]{1,2,4}) {
+            LineOptions options = new LineOptions(10000,10000,5);
+            options.setTopology(chain);
+            cases.add(new Case("line/parallel="+segments+" series-1000 qMax=5","events/s",() -> {
+                ParallelLine line = new ParallelLine(options,new RandomStream(sink),segments);
+                line.run();
+                return line.getEventCount();
+            }));
+        }
+
+        //the same with a range of twice the mean, which leaves no lookahead so only Time Warp can split it
+        Topology shortChain = series(100);
+        for(int segments : new int[]{1,2,4}) {
+            LineOptions options = new LineOptions(10000,20000,5);
+            options.setTopology(shortChain);
+            options.setSynchronisation("optimistic");
+            cases.add(new Case("line/optimistic="+segments+" series-100 qMax=5","events/s",() -> {
+                ParallelLine line = new ParallelLine(options,new RandomStream(sink),segments);
+                line.run();
+                return line.getEventCount();
+            }));
+        }
+
+        cases.add(new Case("stage/pull-push create-final","events/s",() -> {
+            //the smallest possible line, so the cost is dominated by a single pull and push per widget
+            ProductionLine line = new ProductionLine(sink);
+            line.buildProductionLine(series(0),100,100,5);
+            line.run();
+            return line.getEventCount();
+        }));
+
+        cases.add(queueCase(1));
+        cases.add(queueCase(5));
+        cases.add(queueCase(100));
+        cases.add(warehouseCase());
+        return cases;
+    }
+
+    private static Case lineCase(String name, Topology topology, int M, int N, int qMax, String events, int batch) {
+        LineOptions options = new LineOptions(M,N,qMax);
+        options.setTopology(topology);
+        options.setEventList(events);
+        options.setBatchSize(batch);
+        return lineCase(name,options);
+    }
+
+    private static Case lineCase(String name, LineOptions options) {
+        return new Case(name,"events/s",() -> {
+            ProductionLine line = options.create(sink);
+            line.run();
+            return line.getEventCount();
+        });
+    }
+
+    /**
+     * Offers widgets into a queue until it is full then polls them all out. No stages are attached to the queue so
+     * only the cost of the queue itself is measured.
+     */
+    private static Case queueCase(int qMax) {
+        ProductionLine line = new ProductionLine(0);
+        InterStageQueue queue = new InterStageQueue(line,"Q",qMax);
+        int widget = line.getWidgets().create(0,'A',0);
+        return new Case("queue/offer-poll qMax="+qMax,"ops/s",() -> {
+            long total = 0;
+            for(int round=0;round<1000;round++) {
+                for(int i=0;i<qMax;i++)
+                    queue.offer(widget);
+                for(int i=0;i<qMax;i++)
+                    total += queue.poll()==widget ? 1 : 0;
+            }
+            sink = total;
+            return 2000L*qMax;
+        });
+    }
+
+    /**
+     * Moves finished widgets into the warehouse, spread over the routes of the assignment line.
+     */
+    private static Case warehouseCase() {
+        ProductionLine line = new ProductionLine(0);
+        line.buildProductionLine(1000,2000,5);
+        RouteTable routes = line.getRoutes();
+        Warehouse warehouse = line.getWarehouse();
+
+        //one widget for each of the 8 routes through the line
+        WidgetTable table = line.getWidgets();
+        int[] widgets = new int[8];
+        for(int i=0;i<widgets.length;i++) {
+            int route = routes.extend(RouteTable.EMPTY,(i & 1));
+            route = routes.extend(route,2);
+            route = routes.extend(route,3);
+            route = routes.extend(route,4 + ((i>>1) & 1));
+            route = routes.extend(route,6);
+            route = routes.extend(route,7 + ((i>>2) & 1));
+            route = routes.extend(route,9);
+            widgets[i] = table.create(i,'A',0);
+            table.setRoute(widgets[i],route);
+        }
+        return new Case("warehouse/offer","ops/s",() -> {
+            for(int i=0;i<10000;i++)
+                warehouse.offer(table,widgets[i & 7]);
+            sink = warehouse.totalInStorage();
+            return 10000;
+        });
+    }
+
+    /**
+     * A line of a create stage, then a number of stations of two parallel stages each, then a final stage.
+     *
+     * @param stations The amount of parallel stations between the first and the last stage
+     * @return The topology of the line
+     */
+    static Topology series(int stations) {
+        StringBuilder text = new StringBuilder();
+        text.append("queue Q0 qMax\n");
+        text.append("stage create S0 - Q0 M N\n");
+        for(int i=1;i<=stations;i++) {
+            text.append("queue Q").append(i).append(" qMax\n");
+            text.append("stage process S").append(i).append("a Q").append(i-1).append(" Q").append(i).append(" 2M 2N\n");
+            text.append("stage process S").append(i).append("b Q").append(i-1).append(" Q").append(i).append(" 2M 2N\n");
+        }
+        text.append("stage final S").append(stations+1).append(" Q").append(stations).append(" - M N\n");
+        return Topology.parse(new StringReader(text.toString()));
+    }
+
+    /**
+     * Runs the warm up and measured iterations of a benchmark and prints the result.
+     */
+    private static void measure(Case benchmark, long iterationNanos) {
+        for(int i=0;i<WARMUP_ITERATIONS;i++)
+            iterate(benchmark.workload,iterationNanos,null);
+
+        SampleStatistics throughput = new SampleStatistics();
+        long[] allocation = new long[2]; //total bytes, total operations
+        for(int i=0;i<MEASURED_ITERATIONS;i++)
+            throughput.add(iterate(benchmark.workload,iterationNanos,allocation));
+
+        String bytes = allocation[0]<0 ? "n/a" : String.format("%.1f",(double) allocation[0]/allocation[1]);
+        System.out.format("%-50s%-30s%-12s%n",benchmark.name,
+                String.format("%.0f +- %.0f %s",throughput.getMean(),throughput.getHalfWidth(0.95),benchmark.unit),bytes);
+    }
+
+    /**
+     * Runs the workload repeatedly for at least the given time.
+     *
+     * @param workload The work to run
+     * @param iterationNanos The length of the iteration
+     * @param allocation If not null the bytes allocated and operations done are added to the first and second element
+     * @return The operations per second of the iteration
+     */
+    private static double iterate(Workload workload, long iterationNanos, long[] allocation) {
+        long allocatedBefore = allocatedBytes();
+        long operations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            operations += workload.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed<iterationNanos);
+        long allocatedAfter = allocatedBytes();
+
+        if(allocation!=null) {
+            if(allocatedBefore<0 || allocation[0]<0) {
+                allocation[0] = -1;
+            } else {
+                allocation[0] += allocatedAfter - allocatedBefore;
+            }
+            allocation[1] += operations;
+        }
+        return operations * 1e9 / elapsed;
+    }
+
+    /**
+     * @return The bytes allocated by the current thread so far, or -1 if the JVM cannot measure it
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if(!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if(!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+            return -1;
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
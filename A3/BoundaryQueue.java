@@ -0,0 +1,303 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * File: BoundaryQueue.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: An interstage queue where a {@link ParallelLine} is cut into segments. The queue itself belongs to
+ * the segment after it, the stages before it belong to the segment before, and the two segments run on different threads
+ * so they never touch each other's state. Instead they pass messages through this queue:
+ *   - an arrival is sent when a stage before the queue starts a widget, for the time the widget will be finished, which is
+ *     at least the shortest service time of the stage in the future. That gap is the lookahead that lets the next segment
+ *     run ahead without waiting for every event of the segment before it.
+ *   - a release is sent back when the widget is actually in the queue, which may be later than its arrival if the queue
+ *     was full. Until then the stage counts as blocked, exactly as it would be in front of a full queue on a single line.
+ * Each side of the queue is only used by the thread of its own segment, the two message queues are the only shared state.
+ * Each segment has its own {@link WidgetTable}, so a widget is copied out of the table of the segment before into the
+ * arrival, and into the table of the segment after once it is admitted to the queue.
+ */
+public class BoundaryQueue extends InterStageQueue {
+
+    private final ProductionLine upstream; //the segment the stages before the queue belong to
+    private final RouteTable routes; //the routes of the segment after the queue
+
+    //shared between the two segments unless the line replaces them, see setChannels
+    private Queue<Message> arrivals;
+    private Queue<Message> releases;
+
+    //the side of the segment before the queue, indexed by the id of the stage in that segment
+    private boolean[] pending; //whether the last widget of the stage has not been released yet
+    private boolean[] waiting; //whether the stage is blocked on its pending widget
+    private int pendingCount;
+    private long arrivalsSent;
+
+    //the side of the segment after the queue
+    private final Queue<Message> remoteBlocked; //arrivals that found the queue full, in the order they arrived
+    private long releasesSent;
+
+    /**
+     * Creates a new boundary queue. It is added to the line after it like any other queue.
+     *
+     * @param line The segment after the queue, which the queue belongs to
+     * @param upstream The segment of the stages before the queue
+     * @param name The name of the queue
+     * @param qMax The maximum capacity of the queue
+     */
+    public BoundaryQueue(ProductionLine line, ProductionLine upstream, String name, int qMax) {
+        super(line,name,qMax);
+        this.upstream = upstream;
+        this.routes = line.getRoutes();
+        this.arrivals = new ConcurrentLinkedQueue<>();
+        this.releases = new ConcurrentLinkedQueue<>();
+        this.pending = new boolean[16];
+        this.waiting = new boolean[16];
+        this.remoteBlocked = new ArrayDeque<>();
+    }
+
+    /**
+     * A stage before the queue must wait until its last widget has been released.
+     */
+    @Override
+    public boolean hasRoomFor(Stage stage) {
+        int id = stage.getId();
+        return id>=pending.length || !pending[id];
+    }
+
+    /**
+     * Sends the widget to the segment after the queue for the time it will be finished.
+     */
+    @Override
+    public void announce(Stage stage, int widget, double time) {
+        int id = stage.getId();
+        grow(id);
+        pending[id] = true;
+        pendingCount++;
+        WidgetTable widgets = upstream.getWidgets();
+        arrivals.offer(new Message(time,arrivalsSent++,stage,widgets.getId(widget),widgets.getOrigin(widget),
+                widgets.getCreationTime(widget),widgets.getRoute(widget)));
+    }
+
+    /**
+     * The widget was already sent ahead by {@link #announce(Stage, int, double)}, so it has left the segment before
+     * the queue and is released there.
+     */
+    @Override
+    public void offer(int widget) {
+        upstream.getWidgets().release(widget);
+    }
+
+    /**
+     * Marks a stage before the queue as blocked until its pending widget is released.
+     */
+    @Override
+    public void addBlocked(Stage stage) {
+        waiting[stage.getId()] = true;
+    }
+
+    /**
+     * Takes a widget and lets the first arrival that found the queue full in to take its place.
+     */
+    @Override
+    public int poll() {
+        int widget = super.poll();
+        Message blocked = remoteBlocked.poll();
+        if(blocked!=null)
+            admit(blocked);
+        return widget;
+    }
+
+    /**
+     * Delivers an arrival at the current time of the segment after the queue. The widget joins the route table of that
+     * segment through a link to its route in the segment before, see {@link RouteTable#link(int)}.
+     *
+     * @param arrival A message from {@link #takeArrival()}
+     */
+    void arrive(Message arrival) {
+        //the message is left as it is, an optimistic line may deliver it again after a rollback. The widget has no stamps
+        //in this segment until it reaches a stage here
+        Message admitted = new Message(arrival.time,arrival.sequence,arrival.stage,arrival.id,arrival.origin,
+                arrival.creationTime,routes.link(arrival.route));
+        if(isFull()) {
+            remoteBlocked.offer(admitted);
+            return;
+        }
+        admit(admitted);
+    }
+
+    private void grow(int id) {
+        if(id>=pending.length) {
+            pending = Arrays.copyOf(pending,Math.max(id+1,pending.length*2));
+            waiting = Arrays.copyOf(waiting,pending.length);
+        }
+    }
+
+    private void admit(Message arrival) {
+        WidgetTable widgets = getLine().getWidgets();
+        int widget = widgets.create(arrival.id,arrival.origin,arrival.creationTime);
+        widgets.setRoute(widget,arrival.route);
+        super.offer(widget);
+        releases.offer(new Message(getLine().getCurrentTime(),releasesSent++,arrival.stage));
+    }
+
+    /**
+     * Delivers a release at the current time of the segment before the queue, waking the stage if it was blocked.
+     *
+     * @param release A message from {@link #takeRelease()}
+     */
+    void release(Message release) {
+        int id = release.stage.getId();
+        grow(id);
+        if(!pending[id])
+            return; //an optimistic line may see the release of a widget it has rolled back, it is cancelled later
+        pending[id] = false;
+        pendingCount--;
+        if(waiting[id]) {
+            waiting[id] = false;
+            upstream.wake(release.stage);
+        }
+    }
+
+    /**
+     * @return The next arrival that has been sent, or null if there is none. Only the segment after the queue calls this.
+     */
+    Message takeArrival() {
+        return arrivals.poll();
+    }
+
+    /**
+     * @return The next release that has been sent, or null if there is none. Only the segment before the queue calls this.
+     */
+    Message takeRelease() {
+        return releases.poll();
+    }
+
+    /**
+     * @return The amount of widgets sent by the segment before the queue that have not been released yet
+     */
+    int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * Replaces the queues messages are sent through. An optimistic line sends into queues only its own segment sees, and
+     * forwards the messages itself so that it can take them back.
+     *
+     * @param arrivals Where arrivals are sent
+     * @param releases Where releases are sent
+     */
+    void setChannels(Queue<Message> arrivals, Queue<Message> releases) {
+        this.arrivals = arrivals;
+        this.releases = releases;
+    }
+
+    /**
+     * Saves the side of the queue the segment after uses. Each side is only touched by the thread of its own segment, so
+     * the segment before saves its side separately with {@link #saveUpstream()}.
+     */
+    @Override
+    State save() {
+        return new State(this);
+    }
+
+    @Override
+    void restore(InterStageQueue.State state) {
+        super.restore(state);
+        State saved = (State) state;
+        remoteBlocked.clear();
+        remoteBlocked.addAll(Arrays.asList(saved.remoteBlocked)); //messages never change, so they are shared
+        releasesSent = saved.releasesSent;
+    }
+
+    /**
+     * @return A copy of the side of the queue the segment before uses
+     */
+    UpstreamState saveUpstream() {
+        return new UpstreamState(this);
+    }
+
+    /**
+     * @param state A state from {@link #saveUpstream()}
+     */
+    void restoreUpstream(UpstreamState state) {
+        pending = state.pending.clone();
+        waiting = state.waiting.clone();
+        pendingCount = state.pendingCount;
+        arrivalsSent = state.arrivalsSent;
+    }
+
+    /**
+     * The side of the queue the segment after uses.
+     */
+    static class State extends InterStageQueue.State {
+
+        private final Message[] remoteBlocked;
+        private final long releasesSent;
+
+        private State(BoundaryQueue queue) {
+            super(queue);
+            this.remoteBlocked = queue.remoteBlocked.toArray(new Message[0]);
+            this.releasesSent = queue.releasesSent;
+        }
+    }
+
+    /**
+     * The side of the queue the segment before uses.
+     */
+    static class UpstreamState {
+
+        private final boolean[] pending;
+        private final boolean[] waiting;
+        private final int pendingCount;
+        private final long arrivalsSent;
+
+        private UpstreamState(BoundaryQueue queue) {
+            this.pending = queue.pending.clone();
+            this.waiting = queue.waiting.clone();
+            this.pendingCount = queue.pendingCount;
+            this.arrivalsSent = queue.arrivalsSent;
+        }
+    }
+
+    /**
+     * A widget sent to the segment after the queue or the release of a stage sent back. Messages are ordered by time, and
+     * messages with the same time by the order they were sent, so a run is repeatable. An arrival carries everything
+     * about the widget apart from its stamps, which only mean something in the segment before.
+     */
+    static class Message implements Comparable<Message> {
+
+        final double time;
+        final long sequence;
+        final Stage stage;
+        final long id; //-1 for a release
+        final char origin;
+        final double creationTime;
+        final int route;
+
+        Message(double time, long sequence, Stage stage, long id, char origin, double creationTime, int route) {
+            this.time = time;
+            this.sequence = sequence;
+            this.stage = stage;
+            this.id = id;
+            this.origin = origin;
+            this.creationTime = creationTime;
+            this.route = route;
+        }
+
+        /**
+         * Creates a release.
+         */
+        Message(double time, long sequence, Stage stage) {
+            this(time,sequence,stage,-1,'\0',0,RouteTable.EMPTY);
+        }
+
+        @Override
+        public int compareTo(Message o) {
+            int compare = Double.compare(time,o.time);
+            return compare!=0 ? compare : Long.compare(sequence,o.sequence);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+import java.util.Arrays;
+
+/**
+ * File: CalendarEventList.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: An {@link EventList} implemented as a calendar queue (R. Brown, 1988). Time is divided into "days"
+ * of equal width and the days are laid out over a "year" of buckets like a desk calendar, so an event at time t is stored
+ * in bucket floor(t/width) mod buckets. Each bucket is a short sorted list. Removing the next event only has to look at the
+ * bucket of the current day, so both operations take amortised O(1) time as long as the width of a day matches the
+ * spacing of the events. To keep it that way the calendar is rebuilt, and the width re-estimated, whenever the amount of
+ * events doubles or halves.
+ *
+ * Events are stored in a pool of nodes made of parallel primitive arrays and each bucket is a chain of node indexes, so
+ * once the pool is large enough scheduling an event does not allocate.
+ */
+public class CalendarEventList implements EventList {
+
+    private static final int MIN_BUCKETS = 2;
+    private static final int SAMPLE_SIZE = 25; //amount of events sampled when estimating the width of a day
+
+    private static final int NONE = -1; //the end of a chain
+
+    //the node pool. A node is either in a bucket or in the chain of free nodes
+    private double[] times;
+    private int[] stages;
+    private int[] next;
+    private int free;
+
+    private int[] buckets; //the first node of each bucket
+    private int mask; //buckets is always a power of two so the bucket of a day is day & mask
+    private double width; //the width of a day
+    private long currentDay; //the day of the last removed event. No scheduled event is on an earlier day
+    private int size;
+
+    private int growAt;
+    private int shrinkAt;
+
+    /**
+     * Creates a new empty calendar. The width of a day is estimated from the events once there are enough of them.
+     */
+    public CalendarEventList() {
+        this(1.0);
+    }
+
+    /**
+     * Creates a new empty calendar.
+     *
+     * @param width The initial width of a day. This should be close to the average time between events. This must be positive.
+     */
+    public CalendarEventList(double width) {
+        if(width<=0)
+            throw new IllegalArgumentException("The width of a day must be positive");
+        this.width = width;
+        this.currentDay = Long.MIN_VALUE;
+        this.times = new double[0];
+        this.stages = new int[0];
+        this.next = new int[0];
+        this.free = NONE;
+        setBuckets(newBuckets(MIN_BUCKETS));
+    }
+
+    @Override
+    public void add(double time, int stage) {
+        if(size==0)
+            currentDay = dayOf(time);
+
+        int node = allocate();
+        times[node] = time;
+        stages[node] = stage;
+        insert(node);
+        size++;
+        if(size>growAt)
+            resize(buckets.length*2);
+    }
+
+    @Override
+    public double firstTime() {
+        if(size==0)
+            throw new IllegalStateException("Event list is empty");
+        return times[buckets[findFirst()]];
+    }
+
+    @Override
+    public int poll() {
+        if(size==0)
+            throw new IllegalStateException("Event list is empty");
+
+        int node = removeHead(findFirst());
+        int stage = stages[node];
+        release(node);
+        size--;
+        if(size<shrinkAt)
+            resize(buckets.length/2);
+        return stage;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public CalendarEventList copy() {
+        CalendarEventList copy = new CalendarEventList(width);
+        copy.times = times.clone();
+        copy.stages = stages.clone();
+        copy.next = next.clone();
+        copy.free = free;
+        copy.buckets = buckets.clone();
+        copy.mask = mask;
+        copy.currentDay = currentDay;
+        copy.size = size;
+        copy.growAt = growAt;
+        copy.shrinkAt = shrinkAt;
+        return copy;
+    }
+
+    /**
+     * @param time A time in the simulation
+     * @return The day which contains the time.
+     */
+    private long dayOf(double time) {
+        return (long) Math.floor(time / width);
+    }
+
+    /**
+     * Inserts a node into the sorted chain of its bucket. Events with the same time keep the order they were added in.
+     *
+     * @param node The node to insert
+     */
+    private void insert(int node) {
+        double time = times[node];
+        long day = dayOf(time);
+        if(day<currentDay)
+            currentDay = day; //the event was scheduled in the past, move back so it is not skipped over
+
+        int bucket = (int) (day & mask);
+        int previous = NONE;
+        int current = buckets[bucket];
+        while (current!=NONE && times[current]<=time) {
+            previous = current;
+            current = next[current];
+        }
+
+        next[node] = current;
+        if(previous==NONE) {
+            buckets[bucket] = node;
+        } else {
+            next[previous] = node;
+        }
+    }
+
+    /**
+     * Finds the bucket of the earliest event. This walks forward from the current day for at most one year. If every
+     * bucket only has events for later years the calendar is sparse, so this jumps straight to the earliest event instead.
+     * Either way the current day is left on the day of the earliest event.
+     *
+     * Precondition: The calendar is not empty
+     *
+     * @return The bucket whose first node is the earliest event
+     */
+    private int findFirst() {
+        for(int i=0;i<buckets.length;i++) {
+            int bucket = (int) (currentDay & mask);
+            int head = buckets[bucket];
+            if(head!=NONE && dayOf(times[head])<=currentDay)
+                return bucket;
+            currentDay++;
+        }
+
+        //nothing within a year, the earliest event is the earliest head of any bucket
+        int earliest = NONE;
+        for(int bucket=0;bucket<buckets.length;bucket++) {
+            int head = buckets[bucket];
+            if(head!=NONE && (earliest==NONE || times[head]<times[buckets[earliest]]))
+                earliest = bucket;
+        }
+        currentDay = dayOf(times[buckets[earliest]]);
+        return earliest;
+    }
+
+    private int removeHead(int bucket) {
+        int head = buckets[bucket];
+        buckets[bucket] = next[head];
+        next[head] = NONE;
+        return head;
+    }
+
+    /**
+     * Takes a node from the free chain, growing the pool if there are none.
+     *
+     * @return An unused node
+     */
+    private int allocate() {
+        if(free==NONE) {
+            int oldCapacity = times.length;
+            int capacity = Math.max(oldCapacity*2,16);
+            times = Arrays.copyOf(times,capacity);
+            stages = Arrays.copyOf(stages,capacity);
+            next = Arrays.copyOf(next,capacity);
+            for(int node=capacity-1;node>=oldCapacity;node--) {
+                next[node] = free;
+                free = node;
+            }
+        }
+
+        int node = free;
+        free = next[node];
+        return node;
+    }
+
+    private void release(int node) {
+        next[node] = free;
+        free = node;
+    }
+
+    private static int[] newBuckets(int count) {
+        int[] buckets = new int[count];
+        Arrays.fill(buckets,NONE);
+        return buckets;
+    }
+
+    /**
+     * Rebuilds the calendar with a new amount of buckets and re-estimates the width of a day.
+     *
+     * @param bucketCount The new amount of buckets. This is a power of two.
+     */
+    private void resize(int bucketCount) {
+        if(bucketCount<MIN_BUCKETS)
+            return;
+
+        double newWidth = estimateWidth();
+        int[] old = buckets;
+        width = newWidth;
+        setBuckets(newBuckets(bucketCount));
+
+        long firstDay = Long.MAX_VALUE;
+        for(int head : old) {
+            int node = head;
+            while (node!=NONE) {
+                int following = next[node];
+                firstDay = Math.min(firstDay,dayOf(times[node]));
+                insert(node);
+                node = following;
+            }
+        }
+        currentDay = firstDay;
+    }
+
+    /**
+     * Estimates the width of a day from the separation of the earliest events, as in Brown's paper. The average separation is
+     * calculated twice, the second time ignoring separations more than twice the first average so a few outliers
+     * do not stretch the days. A day is three times the resulting separation.
+     *
+     * @return The new width of a day, or the current width if it cannot be estimated
+     */
+    private double estimateWidth() {
+        int samples = Math.min(size,SAMPLE_SIZE);
+        if(samples<2)
+            return width;
+
+        //take the earliest events out to find their times then put them back
+        long savedDay = currentDay;
+        int[] sampled = new int[samples];
+        for(int i=0;i<samples;i++)
+            sampled[i] = removeHead(findFirst());
+        for(int node : sampled)
+            insert(node);
+        currentDay = savedDay;
+
+        double total = times[sampled[samples-1]] - times[sampled[0]];
+        double average = total / (samples-1);
+        if(average<=0)
+            return width;
+
+        double filteredTotal = 0;
+        int filteredCount = 0;
+        for(int i=1;i<samples;i++) {
+            double separation = times[sampled[i]] - times[sampled[i-1]];
+            if(separation<=2*average) {
+                filteredTotal += separation;
+                filteredCount++;
+            }
+        }
+        if(filteredTotal<=0)
+            return width;
+        return 3 * filteredTotal / filteredCount;
+    }
+
+    private void setBuckets(int[] buckets) {
+        this.buckets = buckets;
+        this.mask = buckets.length-1;
+        this.growAt = buckets.length*2;
+        this.shrinkAt = buckets.length>MIN_BUCKETS ? buckets.length/2-2 : -1;
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * File: Comparison.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Compares two scenarios of the same production line, for example qMax=5 against qMax=10, by running
+ * replications of both and taking the difference of every figure replication by replication. With common random numbers
+ * the two runs of a replication use the same stream for the same stage, and as each stage draws exactly one number per
+ * widget, the k-th widget of a stage takes the same time in both scenarios. The two runs are then positively correlated
+ * so their difference varies far less than the difference of two independent runs, and a paired-difference confidence
+ * interval needs far fewer replications to tell the scenarios apart.
+ */
+public class Comparison {
+
+    private final LineOptions baseline;
+    private final LineOptions alternative;
+    private final int replications;
+    private final long seed;
+
+    /**
+     * Creates a new comparison. Whether the scenarios share streams, and whether each replication is an antithetic pair,
+     * is taken from {@link LineOptions#setVariance(String)} of the baseline.
+     *
+     * @param baseline The scenario to compare against
+     * @param alternative The scenario being compared. This must have the same stages, queues and paths as the baseline.
+     * @param replications The amount of replications of each scenario. This must be positive.
+     * @param seed The master seed from which the stream of each replication is split
+     */
+    public Comparison(LineOptions baseline, LineOptions alternative, int replications, long seed) {
+        if(replications<=0)
+            throw new IllegalArgumentException("There must be at least one replication");
+
+        this.baseline = baseline;
+        this.alternative = alternative;
+        this.replications = replications;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs the comparison on a fixed pool with one thread per available processor.
+     *
+     * @return The summaries of both scenarios and of their difference
+     */
+    public ComparisonSummary run() {
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return run(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs both scenarios of every replication on the given executor.
+     *
+     * @param executor The executor to run the replications on
+     * @return The summaries of both scenarios and of their difference
+     */
+    public ComparisonSummary run(ExecutorService executor) {
+        boolean common = baseline.isCommon();
+        RandomStream[] streams = RandomStream.replications(seed,common ? replications : 2*replications);
+
+        List<Future<LineStatistics>> baselineResults = new ArrayList<>(replications);
+        List<Future<LineStatistics>> alternativeResults = new ArrayList<>(replications);
+        for(int i=0;i<replications;i++) {
+            RandomStream baselineStream = streams[i];
+            RandomStream alternativeStream = common ? streams[i] : streams[replications+i];
+            baselineResults.add(executor.submit(() -> Replications.runReplication(baseline,baselineStream)));
+            alternativeResults.add(executor.submit(() -> Replications.runReplication(alternative,alternativeStream)));
+        }
+
+        ComparisonSummary summary = null;
+        for(int i=0;i<replications;i++) {
+            LineStatistics first = Replications.join(baselineResults.get(i));
+            LineStatistics second = Replications.join(alternativeResults.get(i));
+            if(summary==null)
+                summary = new ComparisonSummary(first,baseline,alternative);
+            summary.add(first,second);
+        }
+        return summary;
+    }
+}
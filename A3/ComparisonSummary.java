@@ -0,0 +1,102 @@
+/**
+ * File: ComparisonSummary.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: The result of a {@link Comparison}. This holds a {@link ReplicationSummary} of each scenario and one of
+ * the paired differences, alternative minus baseline. For every figure it also reports how much smaller the variance of the
+ * paired difference is than it would be for independent runs with the same per scenario variance, which is roughly the
+ * factor by which pairing cut the replications needed.
+ */
+public class ComparisonSummary {
+
+    private final LineOptions baselineOptions;
+    private final LineOptions alternativeOptions;
+    private final ReplicationSummary baseline;
+    private final ReplicationSummary alternative;
+    private final ReplicationSummary difference;
+
+    /**
+     * Creates a new summary.
+     *
+     * @param layout Any replication of the line. This is only used for the names and sizes of the tables.
+     * @param baselineOptions The options of the baseline scenario, used to label it
+     * @param alternativeOptions The options of the alternative scenario, used to label it
+     */
+    public ComparisonSummary(LineStatistics layout, LineOptions baselineOptions, LineOptions alternativeOptions) {
+        this.baselineOptions = baselineOptions;
+        this.alternativeOptions = alternativeOptions;
+        this.baseline = new ReplicationSummary(layout);
+        this.alternative = new ReplicationSummary(layout);
+        this.difference = new ReplicationSummary(layout);
+    }
+
+    /**
+     * Adds a replication of both scenarios.
+     *
+     * @param first The baseline run of the replication
+     * @param second The alternative run of the replication
+     */
+    public void add(LineStatistics first, LineStatistics second) {
+        baseline.add(first);
+        alternative.add(second);
+        difference.add(LineStatistics.difference(first,second));
+    }
+
+    public ReplicationSummary getBaseline() {
+        return baseline;
+    }
+
+    public ReplicationSummary getAlternative() {
+        return alternative;
+    }
+
+    /**
+     * @return The summary of the alternative minus the baseline of each replication
+     */
+    public ReplicationSummary getDifference() {
+        return difference;
+    }
+
+    /**
+     * Prints the mean of each figure for both scenarios, the paired difference as mean +- the half width of its 95%
+     * confidence interval, and the variance reduction of the pairing.
+     */
+    public void print() {
+        LineStatistics layout = baseline.getLayout();
+        System.out.println("Replications: "+baseline.getReplications()+" (difference is B - A, mean +- 95% confidence half width)");
+        System.out.println("A: M="+baselineOptions.getM()+" N="+baselineOptions.getN()+" qMax="+baselineOptions.getQMax());
+        System.out.println("B: M="+alternativeOptions.getM()+" N="+alternativeOptions.getN()+" qMax="+alternativeOptions.getQMax());
+        System.out.format("%-22s%-15s%-15s%-28s%-12s%n","Figure","A","B","B - A","Reduction");
+        for(int i=0;i<layout.getStageCount();i++) {
+            String name = layout.getStageName(i);
+            printRow(name+" Work[%]",baseline.getWorkPercentage(i),alternative.getWorkPercentage(i),difference.getWorkPercentage(i));
+            printRow(name+" Starve[t]",baseline.getStarvationTime(i),alternative.getStarvationTime(i),difference.getStarvationTime(i));
+            printRow(name+" Block[t]",baseline.getBlockedTime(i),alternative.getBlockedTime(i),difference.getBlockedTime(i));
+        }
+        for(int i=0;i<layout.getQueueCount();i++) {
+            String name = layout.getQueueName(i);
+            printRow(name+" AvgTime[t]",baseline.getAverageTimeSpent(i),alternative.getAverageTimeSpent(i),difference.getAverageTimeSpent(i));
+            printRow(name+" AvgWgts",baseline.getAverageWidgets(i),alternative.getAverageWidgets(i),difference.getAverageWidgets(i));
+        }
+        for(int i=0;i<layout.getPathCount();i++) {
+            printRow(layout.getPathName(i),baseline.getWidgets(i),alternative.getWidgets(i),difference.getWidgets(i));
+        }
+    }
+
+    private static void printRow(String name, SampleStatistics a, SampleStatistics b, SampleStatistics difference) {
+        System.out.format("%-22s%-15.2f%-15.2f%-28s%-12s%n",name,a.getMean(),b.getMean(),difference,
+                formatReduction(a.getVariance()+b.getVariance(),difference.getVariance()));
+    }
+
+    /**
+     * @param independent The variance the difference would have if the scenarios were run independently
+     * @param paired The variance of the paired difference
+     * @return The ratio of the two, or - if it is undefined
+     */
+    private static String formatReduction(double independent, double paired) {
+        if(paired<=0)
+            return "-";
+        return String.format("%.1fx",independent/paired);
+    }
+}
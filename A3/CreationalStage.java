@@ -1,5 +1,3 @@
-import java.util.Locale;
-
 /**
  * File: CreationalStage.java
  *
@@ -24,32 +22,44 @@ public class CreationalStage extends Stage {
         super(line,null,next, m, n, name);
     }
 
+    /**
+     * Creates a new CreationalStage
+     *
+     * @param line The production line which this stage is apart of
+     * @param next The next queue in the production line.
+     * @param serviceTime The distribution of the processing time
+     * @param name The name of the stage. This should be in the form of S[ordinal]<parallel> for example s0a, s1, s3b
+     */
+    public CreationalStage(ProductionLine line, InterStageQueue next, ServiceTime serviceTime, String name) {
+        super(line,null,next,serviceTime,name);
+    }
+
     /**
      * @return Returns the name of this stage. For example if the stage was called s0a this would return A.
      */
-    private String getCode() {
-        return String.valueOf(getName().charAt(getName().length()-1)).toUpperCase(Locale.ROOT);
+    private char getCode() {
+        return Character.toUpperCase(getName().charAt(getName().length()-1));
     }
 
     /**
      * Moves the widget to the next queue.
      *
-     * @param widget The widget to push
+     * @param widget The handle of the widget to push
      */
     @Override
-    protected void pushWidget(Widget widget) {
+    protected void pushWidget(int widget) {
         getNext().offer(widget);
     }
 
     /**
      * Creates a widget, gives it a unique id using the {@link IdGenerator} and marks that the widget was created here.
      *
-     * @return A newly created widget
+     * @return The handle of a newly created widget
      */
     @Override
-    protected Widget pullWidget() {
-        String name = IdGenerator.instance().getId() + getCode(); //id + A/B
-        return new Widget(name);
+    protected int pullWidget() {
+        long id = getLine().getIdGenerator().getId();
+        return getLine().getWidgets().create(id,getCode(),getLine().getCurrentTime()); //the name is id + A/B
     }
 
 }
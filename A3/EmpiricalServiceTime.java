@@ -0,0 +1,197 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * File: EmpiricalServiceTime.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Service times from a histogram of observed times. A bin is chosen with Walker's alias method, which
+ * after building two tables picks any of n bins with one uniform number and one comparison, rather than searching the
+ * cumulative weights. The time is then uniform within the bin.
+ *
+ * The alias tables put the bins in no particular order, so a larger uniform number does not pick a later bin. On a
+ * {@link RandomStream#isPaired()} stream the bin is instead found by a binary search over the cumulative weights of the
+ * bins in order of their lower edge, so the time rises with the uniform number and antithetic pairs work.
+ */
+public class EmpiricalServiceTime implements ServiceTime {
+
+    private final double[] low; //the lower edge of each bin
+    private final double[] width; //the width of each bin
+    private final double[] probability; //the chance of keeping a column rather than taking its alias
+    private final int[] alias;
+    private final double mean;
+    private final double minimum; //the lowest edge of a bin that can be picked
+    private final int[] sorted; //the bins in order of their lower edge
+    private final double[] cumulative; //the total probability of sorted bins up to and including each one
+    private final int last; //the last sorted bin with a positive weight
+
+    /**
+     * Creates a new histogram.
+     *
+     * @param low The lower edge of each bin
+     * @param high The upper edge of each bin
+     * @param weights The relative weight of each bin. These must not be negative and at least one must be positive.
+     */
+    public EmpiricalServiceTime(double[] low, double[] high, double[] weights) {
+        int n = weights.length;
+        if(n==0 || low.length!=n || high.length!=n)
+            throw new IllegalArgumentException("A histogram needs the same amount of edges and weights and at least one bin");
+
+        double total = 0;
+        for(int i=0;i<n;i++) {
+            if(weights[i]<0 || low[i]<0 || high[i]<low[i])
+                throw new IllegalArgumentException("Bins must have a non negative weight and non negative edges in order");
+            total += weights[i];
+        }
+        if(total<=0)
+            throw new IllegalArgumentException("At least one bin must have a positive weight");
+
+        this.low = low.clone();
+        this.width = new double[n];
+        double sum = 0;
+        for(int i=0;i<n;i++) {
+            width[i] = high[i] - low[i];
+            sum += weights[i]/total * (low[i] + high[i])/2;
+        }
+        this.mean = sum;
+
+        double lowest = Double.POSITIVE_INFINITY;
+        for(int i=0;i<n;i++) {
+            if(weights[i]>0)
+                lowest = Math.min(lowest,low[i]);
+        }
+        this.minimum = lowest;
+
+        Integer[] order = new Integer[n];
+        for(int i=0;i<n;i++)
+            order[i] = i;
+        Arrays.sort(order,Comparator.comparingDouble(i -> low[i]));
+        this.sorted = new int[n];
+        this.cumulative = new double[n];
+        double running = 0;
+        int lastPositive = 0;
+        for(int i=0;i<n;i++) {
+            sorted[i] = order[i];
+            running += weights[order[i]]/total;
+            cumulative[i] = running;
+            if(weights[order[i]]>0)
+                lastPositive = i;
+        }
+        this.last = lastPositive;
+
+        //Vose's construction, columns below the average are topped up from columns above it
+        this.probability = new double[n];
+        this.alias = new int[n];
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for(int i=0;i<n;i++) {
+            scaled[i] = weights[i]/total * n;
+            if(scaled[i]<1)
+                small[smallCount++] = i;
+            else
+                large[largeCount++] = i;
+        }
+        while (smallCount>0 && largeCount>0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if(scaled[more]<1)
+                small[smallCount++] = more;
+            else
+                large[largeCount++] = more;
+        }
+        //whatever is left is full up to rounding error
+        while (largeCount>0)
+            probability[large[--largeCount]] = 1;
+        while (smallCount>0)
+            probability[small[--smallCount]] = 1;
+    }
+
+    /**
+     * Parses a histogram in the form lo-hi:weight,lo-hi:weight,...
+     *
+     * @param bins The bins of the histogram
+     * @param scale Every edge is multiplied by this
+     * @return The histogram
+     * @throws IllegalArgumentException if the bins cannot be parsed
+     */
+    public static EmpiricalServiceTime parse(String bins, double scale) {
+        String[] items = bins.split(",");
+        double[] low = new double[items.length];
+        double[] high = new double[items.length];
+        double[] weights = new double[items.length];
+        try {
+            for(int i=0;i<items.length;i++) {
+                String[] parts = items[i].split(":");
+                String[] edges = parts[0].split("-");
+                if(parts.length!=2 || edges.length!=2)
+                    throw new IllegalArgumentException("Invalid bin '"+items[i]+"' expected lo-hi:weight");
+                low[i] = Double.parseDouble(edges[0]) * scale;
+                high[i] = Double.parseDouble(edges[1]) * scale;
+                weights[i] = Double.parseDouble(parts[1]);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid histogram '"+bins+"'");
+        }
+        return new EmpiricalServiceTime(low,high,weights);
+    }
+
+    @Override
+    public double sample(RandomStream random) {
+        if(random.isPaired())
+            return sampleInOrder(random);
+        double column = random.nextDouble() * probability.length;
+        int bin = (int) column;
+        if(bin==probability.length) //an antithetic stream can give exactly 1
+            bin--;
+        if(column - bin >= probability[bin])
+            bin = alias[bin];
+        return low[bin] + width[bin] * random.nextDouble();
+    }
+
+    /**
+     * Picks the bin by inverting the cumulative weights, so the bin and the time within it both rise with their
+     * uniform numbers.
+     */
+    private double sampleInOrder(RandomStream random) {
+        double u = random.nextDouble();
+        //the first bin whose cumulative weight is above u, which never has no weight of its own. Rounding or an
+        //antithetic 1 falls through to the last bin that can be picked
+        int lo = 0;
+        int hi = last;
+        while (lo<hi) {
+            int mid = (lo+hi) >>> 1;
+            if(u<cumulative[mid])
+                hi = mid;
+            else
+                lo = mid+1;
+        }
+        int bin = sorted[lo];
+        return low[bin] + width[bin] * random.nextDouble();
+    }
+
+    @Override
+    public double getMean() {
+        return mean;
+    }
+
+    @Override
+    public double getMinimum() {
+        return minimum;
+    }
+
+    /**
+     * @return True, on a paired stream the bin is found in order of the edges and the time within it is one uniform
+     *         number scaled by the width, so the time rises with both
+     */
+    @Override
+    public boolean isAntithetic() {
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * File: ErlangServiceTime.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Erlang distributed service times, the total of k exponential phases. Rather than drawing each phase,
+ * the uniform numbers of the phases are multiplied together and a single logarithm is taken, as -ln(u1 u2 ... uk) is the
+ * sum of k unit exponentials. The product is folded into the sum every few phases so it never underflows.
+ */
+public class ErlangServiceTime implements ServiceTime {
+
+    private static final int PHASES_PER_LOG = 16; //16 uniforms of at least 2^-53 cannot underflow a double
+
+    private final int phases;
+    private final double mean;
+    private final double phaseMean; //precomputed mean/phases
+
+    /**
+     * @param phases The amount of exponential phases. This must be positive.
+     * @param mean The average total service time. This must not be negative.
+     */
+    public ErlangServiceTime(int phases, double mean) {
+        if(phases<=0)
+            throw new IllegalArgumentException("An erlang distribution needs at least one phase");
+        if(mean<0)
+            throw new IllegalArgumentException("The mean cannot be negative");
+        this.phases = phases;
+        this.mean = mean;
+        this.phaseMean = mean/phases;
+    }
+
+    @Override
+    public double sample(RandomStream random) {
+        double total = 0;
+        double product = 1;
+        for(int i=0;i<phases;i++) {
+            product *= Ziggurat.positiveUniform(random);
+            if((i+1) % PHASES_PER_LOG == 0) {
+                total -= Math.log(product);
+                product = 1;
+            }
+        }
+        total -= Math.log(product);
+        return phaseMean * total;
+    }
+
+    @Override
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return 0, any time down to 0 has a positive density
+     */
+    @Override
+    public double getMinimum() {
+        return 0;
+    }
+
+    /**
+     * @return True, every sample multiplies one uniform number per phase and takes -log of the product, so the time
+     *         falls as each of them rises, which pairs just as well as rising
+     */
+    @Override
+    public boolean isAntithetic() {
+        return true;
+    }
+}
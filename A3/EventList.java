@@ -0,0 +1,56 @@
+/**
+ * File: EventList.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: The future event list of the discrete event simulation. An event is the completion of the work of a
+ * {@link Stage} at some time, and is stored as a pair of primitives, the completion time and the id of the stage, so that
+ * scheduling an event does not need an object. Events are handed back in order of completion time. The
+ * {@link ProductionLine} only relies on this interface so the data structure can be swapped depending on the size of the line.
+ */
+public interface EventList {
+
+    /**
+     * Schedules an event.
+     *
+     * @param time The time the event occurs
+     * @param stage The id of the stage whose work completes at the time. This must not be negative.
+     */
+    void add(double time, int stage);
+
+    /**
+     * Precondition: The list is not empty
+     *
+     * @return The time of the earliest event.
+     */
+    double firstTime();
+
+    /**
+     * Removes the earliest event. Events with the same time may be returned in any order.
+     *
+     * Precondition: The list is not empty
+     *
+     * @return The id of the stage of the removed event.
+     */
+    int poll();
+
+    /**
+     * @return The amount of events that are scheduled.
+     */
+    int size();
+
+    /**
+     * Copies the list, used to save the state of a line so it can be rolled back, see {@link ParallelLine}. The copy must
+     * hand back events in exactly the same order as this list would, including events with the same time.
+     *
+     * @return An independent list holding the same events
+     */
+    EventList copy();
+
+    /**
+     * @return True if there are no scheduled events.
+     */
+    default boolean isEmpty() {
+        return size()==0;
+    }
+}
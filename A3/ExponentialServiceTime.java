@@ -0,0 +1,39 @@
+/**
+ * File: ExponentialServiceTime.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Exponentially distributed service times, sampled with the {@link Ziggurat} method so that most
+ * samples need a single random number and a multiplication rather than a logarithm.
+ */
+public class ExponentialServiceTime implements ServiceTime {
+
+    private final double mean;
+
+    /**
+     * @param mean The average service time. This must not be negative.
+     */
+    public ExponentialServiceTime(double mean) {
+        if(mean<0)
+            throw new IllegalArgumentException("The mean cannot be negative");
+        this.mean = mean;
+    }
+
+    @Override
+    public double sample(RandomStream random) {
+        return mean * Ziggurat.exponential(random);
+    }
+
+    @Override
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return 0, any time down to 0 has a positive density
+     */
+    @Override
+    public double getMinimum() {
+        return 0;
+    }
+}
@@ -25,22 +25,37 @@ public class FinalStage extends Stage {
     }
 
     /**
-     * Moves the completed widget ot the warehouse.
+     * Creates a new FinalStage
+     *
+     * @param line The production line which this stage is apart of
+     * @param warehouse The warehouse to move completed widgets to.
+     * @param serviceTime The distribution of the processing time
+     * @param name The name of the stage. This should be in the form of S[ordinal]<parallel> for example s0a, s1, s3b
+     */
+    public FinalStage(ProductionLine line, Warehouse warehouse, InterStageQueue prev, ServiceTime serviceTime, String name) {
+        super(line,prev,null,serviceTime,name);
+        this.warehouse = warehouse;
+    }
+
+    /**
+     * Moves the completed widget ot the warehouse. The widget has left the line, so its handle is released to be reused.
      *
-     * @param widget The widget to push
+     * @param widget The handle of the widget to push
      */
     @Override
-    protected void pushWidget(Widget widget) {
-        warehouse.offer(widget);
+    protected void pushWidget(int widget) {
+        WidgetTable widgets = getLine().getWidgets();
+        warehouse.offer(widgets,widget,getLine().getCurrentTime());
+        widgets.release(widget);
     }
 
     /**
      * Takes a widget from the previous interstage queue. Adds a stamp to show it was made here.
      *
-     * @return The pulled widget.
+     * @return The handle of the pulled widget.
      */
     @Override
-    protected Widget pullWidget() {
+    protected int pullWidget() {
         return getPrev().poll();
     }
 }
@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+/**
+ * File: HeapEventList.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: An {@link EventList} implemented as a binary min-heap over two parallel primitive arrays, one of
+ * completion times and one of stage ids. Each operation is O(log n) in the amount of scheduled events. The arrays only
+ * grow when the heap is full, and a line never has more events than it has stages, so once the simulation is running
+ * scheduling an event does not allocate. This is the default event list.
+ */
+public class HeapEventList implements EventList {
+
+    private double[] times;
+    private int[] stages;
+    private int size;
+
+    public HeapEventList() {
+        this(16);
+    }
+
+    /**
+     * Creates a new empty heap.
+     *
+     * @param capacity The amount of events that can be scheduled before the heap grows. A good capacity is the amount of stages.
+     */
+    public HeapEventList(int capacity) {
+        capacity = Math.max(capacity,1);
+        this.times = new double[capacity];
+        this.stages = new int[capacity];
+    }
+
+    @Override
+    public void add(double time, int stage) {
+        if(size==times.length) {
+            times = Arrays.copyOf(times,size*2);
+            stages = Arrays.copyOf(stages,size*2);
+        }
+
+        //sift the hole up from the bottom until the parent is earlier
+        int hole = size++;
+        while (hole>0) {
+            int parent = (hole-1) >>> 1;
+            if(times[parent]<=time)
+                break;
+            times[hole] = times[parent];
+            stages[hole] = stages[parent];
+            hole = parent;
+        }
+        times[hole] = time;
+        stages[hole] = stage;
+    }
+
+    @Override
+    public double firstTime() {
+        if(size==0)
+            throw new IllegalStateException("Event list is empty");
+        return times[0];
+    }
+
+    @Override
+    public int poll() {
+        if(size==0)
+            throw new IllegalStateException("Event list is empty");
+
+        int first = stages[0];
+        size--;
+        double time = times[size];
+        int stage = stages[size];
+
+        //sift the last event down from the root until both children are later
+        int hole = 0;
+        int half = size >>> 1;
+        while (hole<half) {
+            int child = 2*hole + 1;
+            if(child+1<size && times[child+1]<times[child])
+                child++;
+            if(time<=times[child])
+                break;
+            times[hole] = times[child];
+            stages[hole] = stages[child];
+            hole = child;
+        }
+        times[hole] = time;
+        stages[hole] = stage;
+        return first;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public HeapEventList copy() {
+        HeapEventList copy = new HeapEventList(times.length);
+        System.arraycopy(times,0,copy.times,0,size);
+        System.arraycopy(stages,0,copy.stages,0,size);
+        copy.size = size;
+        return copy;
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.Arrays;
+
+/**
+ * File: Histogram.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: A log-linear histogram of positive values, such as the lead time of each widget from being created
+ * to reaching the warehouse, from which percentiles like the median or the 99th percentile are read. Every power of two
+ * is one bucket range, split linearly into 128 buckets, so every bucket is within 1/128 of its values and any percentile
+ * is accurate to better than 1% whatever the size of the values.
+ *
+ * The bucket of a value is read straight from the exponent and the top bits of the mantissa of the double, so recording
+ * is a few bit operations and an array increment and never allocates. The buckets cover 2^-10 to 2^54 in a fixed array,
+ * smaller values are counted in the first bucket and larger in the last, while the smallest and largest values are kept
+ * exactly so a percentile never lies outside them.
+ *
+ * Every histogram has the same buckets, so the histograms of several runs are merged by adding their counts.
+ */
+public class Histogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS; //buckets in each power of two
+    private static final int MIN_EXPONENT = -10;
+    private static final int MAX_EXPONENT = 53;
+    private static final int BUCKETS = (MAX_EXPONENT-MIN_EXPONENT+1)*SUB_BUCKETS;
+
+    private final long[] counts;
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+
+    public Histogram() {
+        this.counts = new long[BUCKETS];
+        reset();
+    }
+
+    private Histogram(Histogram other) {
+        this.counts = other.counts.clone();
+        this.count = other.count;
+        this.sum = other.sum;
+        this.min = other.min;
+        this.max = other.max;
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value The value. This must not be negative.
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public void record(double value) {
+        if(!(value>=0))
+            throw new IllegalArgumentException("A histogram cannot record the negative value "+value);
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        if(value<min)
+            min = value;
+        if(value>max)
+            max = value;
+    }
+
+    private static int bucket(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        int exponent = (int) (bits >>> 52) - 1023;
+        if(exponent<MIN_EXPONENT)
+            return 0;
+        if(exponent>MAX_EXPONENT)
+            return BUCKETS-1;
+        int sub = (int) (bits >>> (52-SUB_BITS)) & (SUB_BUCKETS-1);
+        return (exponent-MIN_EXPONENT)*SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param bucket The index of a bucket
+     * @return The middle of the values counted in the bucket
+     */
+    private static double middle(int bucket) {
+        int exponent = bucket/SUB_BUCKETS + MIN_EXPONENT;
+        int sub = bucket%SUB_BUCKETS;
+        return Math.scalb(1 + (sub+0.5)/SUB_BUCKETS,exponent);
+    }
+
+    /**
+     * Finds the value below which a fraction of the recorded values lie, for example 0.99 for the 99th percentile.
+     *
+     * @param fraction The fraction, from 0 to 1
+     * @return The middle of the bucket holding the value of that rank, kept within the smallest and largest value, or
+     *         NaN if nothing has been recorded
+     * @throws IllegalArgumentException if the fraction is not between 0 and 1
+     */
+    public double getQuantile(double fraction) {
+        if(!(fraction>=0 && fraction<=1))
+            throw new IllegalArgumentException("A quantile must be between 0 and 1");
+        if(count==0)
+            return Double.NaN;
+
+        long rank = Math.max(1,(long) Math.ceil(fraction*count));
+        long seen = 0;
+        for(int bucket=0;bucket<BUCKETS;bucket++) {
+            seen += counts[bucket];
+            if(seen>=rank)
+                return Math.min(max,Math.max(min,middle(bucket)));
+        }
+        return max;
+    }
+
+    /**
+     * @return The amount of values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The exact mean of the values recorded, or NaN if there are none
+     */
+    public double getMean() {
+        return count==0 ? Double.NaN : sum/count;
+    }
+
+    /**
+     * @return The smallest value recorded
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return The largest value recorded
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Adds the values of another histogram to these, used to pool the replications of a line or merge the segments of
+     * a {@link ParallelLine}.
+     *
+     * @param other Another histogram
+     */
+    public void merge(Histogram other) {
+        for(int i=0;i<BUCKETS;i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min,other.min);
+        max = Math.max(max,other.max);
+    }
+
+    /**
+     * Forgets every value, used to delete the warm-up of a run.
+     */
+    public void reset() {
+        Arrays.fill(counts,0);
+        count = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Prints the amount of values, their mean and each of the given percentiles, one per line.
+     *
+     * @param percentiles The percentiles, each from 0 to 100, for example 99.9
+     */
+    public void print(double... percentiles) {
+        System.out.println("count: "+count);
+        System.out.format("mean: %.2f%n",getMean());
+        for(double percentile : percentiles)
+            System.out.format("%s: %.2f%n",ProductionLine.percentileName(percentile/100),getQuantile(percentile/100));
+    }
+
+    /**
+     * @return An independent copy, so an optimistic {@link ParallelLine} can roll the histogram back
+     */
+    public Histogram copy() {
+        return new Histogram(this);
+    }
+}
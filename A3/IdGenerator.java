@@ -3,36 +3,36 @@
  *
  * Author: Jacob Boyce
  * Course: SENG2200
- * Program Description: Singleton class that provides unique ids for {@link Widget}. Each id that is generated is a number. The first generated
- * will be 0, then second 1, etc etc.
+ * Program Description: Provides unique ids for widgets, see {@link WidgetTable}. Each id that is generated is a number. The
+ * first generated will be 0, then second 1, etc etc.
+ *
+ * Every {@link ProductionLine} has its own generator, so replications run on several threads never share a counter and
+ * each replication numbers its widgets from 0. The counter is a long, so it does not run out however long the line runs.
  */
 public class IdGenerator {
 
-    private int counter;
-    private static IdGenerator instance = null;
+    private long counter;
 
     public IdGenerator() {
         this.counter = 0;
     }
 
-    /**
-     * @return The singleton instance. If the singleton instance does exist it will be created.
-     */
-    public static IdGenerator instance() {
-        //make the instance if it does not exist
-        if(instance==null)
-            instance = new IdGenerator();
-
-        return instance;
-    }
-
     /**
      * Returns a new Id for a widget. Id's are generated as ordinal numbers from a counter. The first number generated
      * will be 0, the next 1, the next 2 etc etc.
      *
      * @return The A new ID for a widget.
      */
-    public String getId() {
-        return String.valueOf(counter++);
+    public long getId() {
+        return counter++;
+    }
+
+    /**
+     * @return An independent copy, so an optimistic {@link ParallelLine} can roll the counter back
+     */
+    public IdGenerator copy() {
+        IdGenerator copy = new IdGenerator();
+        copy.counter = counter;
+        return copy;
     }
 }
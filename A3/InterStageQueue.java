@@ -1,4 +1,4 @@
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * File: InterStageQueue.java
@@ -9,21 +9,40 @@ import java.util.*;
  * The interstage queue represents a queue that sits between two stages. The queue has n stages that sit before
  * it and n stages that sit after it. The queue will store widgets inside of it. Widgets are taken by the next stage
  * and are added by the previous stage. Each interstage queue has a total capacity of qMax.
+ *
+ * The handles of the widgets are stored in a ring of qMax slots with the time each entered in a parallel array, so
+ * offering and polling a widget only moves the head or tail of the ring and never allocates.
  */
 public class InterStageQueue {
 
     private final ProductionLine line;
-    private final List<Stage> next;
-    private final List<Stage> prev;
-    //the queue stores widgets like this to take statistics on how long they spent in the queue
-    private final Queue<StoredWidget> widgets;
+    //the stages on either side of the queue, flat arrays as they are walked on every offer and poll
+    private Stage[] next;
+    private Stage[] prev;
+    //the stages beside the queue that are waiting on it, only these are woken when the queue changes
+    private WaiterList blocked;
+    private WaiterList starved;
+    //the handles of the widgets in the queue and when each entered, to take statistics on how long they spent in the queue. The
+    //oldest widget is at head and the queue holds size widgets from there, wrapping around the end of the arrays
+    private final int[] widgets;
+    private final double[] timeStamps;
+    private int head;
+    private int size;
     private final int qMax; //total capacity of the queue.
 
-    private int totalWidgets;
-    private int count;
+    private double widgetTime; //the integral of the amount of widgets in the queue over time, up to lastChange
+    private double lastChange; //the last time a widget entered or left the queue
     private double totalTimeSpent;
     private int widgetsEntered;
+    //the time spent by the widgets that left, the widgets that left and the widgets in the queue over time in each
+    //batch of the run, for the standard errors of the statistics
+    static final int TIME_SPENT = 0;
+    static final int LEFT = 1;
+    static final int WIDGET_TIME = 2;
+    private BatchMeans batchMeans;
+    private QuantileEstimator[] waits; //the quantiles of the time spent by the widgets that left, see ProductionLine
     private final String name;
+    private final int id;
 
     /**
      * Creates a new interstage queue.
@@ -34,13 +53,21 @@ public class InterStageQueue {
      */
     public InterStageQueue(ProductionLine line, String name ,int qMax) {
         this.name = name;
-        widgets = new ArrayDeque<>(qMax);
-        this.next = new ArrayList<>();
-        this.prev = new ArrayList<>();
+        widgets = new int[qMax];
+        timeStamps = new double[qMax];
+        this.next = new Stage[0];
+        this.prev = new Stage[0];
+        this.blocked = new WaiterList(line.getWakeOrder());
+        this.starved = new WaiterList(line.getWakeOrder());
         this.qMax = qMax;
-        totalWidgets = 0;
-        count = 0;
+        widgetTime = 0;
+        lastChange = 0;
         this.line = line;
+        this.batchMeans = new BatchMeans(3);
+        this.waits = new QuantileEstimator[line.getWaitQuantiles().length];
+        for(int i=0;i<waits.length;i++)
+            waits[i] = new QuantileEstimator(line.getWaitQuantiles()[i]);
+        this.id = line.addQueue(this);
     }
 
     /**
@@ -49,7 +76,29 @@ public class InterStageQueue {
      * @return Returns true if the queue is full and false if it is not.
      */
     public boolean isFull() {
-        return widgets.size()>=qMax;
+        return size>=qMax;
+    }
+
+    /**
+     * Checks whether a stage before this queue can move its finished widget in. For an ordinary queue this is whether
+     * the queue has room, a {@link BoundaryQueue} also makes the stage wait until the other side has taken its last widget.
+     *
+     * @param stage A stage before this queue holding a finished widget
+     * @return True if the stage can offer its widget now
+     */
+    public boolean hasRoomFor(Stage stage) {
+        return !isFull();
+    }
+
+    /**
+     * Called when a stage before this queue starts work on a widget, so the queue knows when the widget will be offered.
+     * An ordinary queue does not need to know, a {@link BoundaryQueue} sends the widget ahead to the other segment.
+     *
+     * @param stage The stage before this queue
+     * @param widget The handle of the widget the stage started on
+     * @param time When the stage finishes the widget
+     */
+    public void announce(Stage stage, int widget, double time) {
     }
 
     /**
@@ -58,70 +107,91 @@ public class InterStageQueue {
      * @return Returns true if the queue is empty and false if it is not.
      */
     public boolean isEmpty() {
-        return widgets.isEmpty();
+        return size==0;
     }
 
     /**
      * Offers a new widget into the queue. A widget cannot be added if the queue is full. The widget must not
-     * be null. When a widget is added to the queue it will run the {@link Stage#pull()} method on the next stages
-     * which will cause any starved stages to start working on the newly added widget.
+     * be null. When a widget is added to the queue one starved stage after it is woken up by the line so it
+     * can start working on the newly added widget.
      *
      * Only the stages before this queue should offer a widget.
      *
-     * @param widget
+     * @param widget The handle of the widget
      * @throws IllegalStateException if the queue is full
      */
-    public void offer(Widget widget) {
+    public void offer(int widget) {
         //check if queue is full
         if(isFull())
             throw new IllegalStateException("Queue is full");
 
         //collect statistics
         widgetsEntered++;
-        widgets.offer(new StoredWidget(widget,line.getCurrentTime()));
-        for(Stage stage : next) {
-            stage.pull();
-        }
+        accumulate();
+        int tail = head + size;
+        if(tail>=qMax)
+            tail -= qMax;
+        widgets[tail] = widget;
+        timeStamps[tail] = line.getCurrentTime();
+        size++;
+        Stage waiter = starved.poll();
+        if(waiter!=null)
+            line.wake(waiter);
     }
 
     /**
      * Takes a widget from the queue. A widget cannot be taken if the queue is empty. When a widget is taken from
-     * the queue it will run {@link Stage#push()} on all of the previous stages causing any blocked stages to move
-     * their widget forward.
+     * the queue one blocked stage before it is woken up by the line so it can move its widget into the free slot.
      *
-     * @return The widget from the queue.
+     * @return The handle of the widget from the queue.
      * @throws IllegalStateException if the queue is empty
      */
-    public Widget poll() {
+    public int poll() {
         //check if empty
         if(isEmpty())
             throw new IllegalStateException("Queue is empty");
 
         //run statistics on the queue
-        StoredWidget widget = widgets.poll();
-        double delta = line.getCurrentTime() - widget.getTimeStamp();
-        totalTimeSpent += delta;
-        for(Stage stage : prev) {
-            stage.push();
+        accumulate();
+        int widget = widgets[head];
+        double timeStamp = timeStamps[head];
+        if(++head==qMax)
+            head = 0;
+        size--;
+        double delta = line.getCurrentTime() - timeStamp;
+        if(timeStamp>=line.getWarmupTime()) { //widgets from the warm-up are not counted
+            totalTimeSpent += delta;
+            batchMeans.add(line.getCurrentTime(),TIME_SPENT,delta);
+            batchMeans.add(line.getCurrentTime(),LEFT,1);
+            for(QuantileEstimator wait : waits)
+                wait.add(delta);
         }
-        return widget.getWidget();
+        Stage waiter = blocked.poll();
+        if(waiter!=null)
+            line.wake(waiter);
+        return widget;
     }
 
     /**
-     * Gathers statistics on the average amount of widgets in the queue at any time. This will record the amount of widgets in the queue now
-     * and will add count for each time this is called.
+     * Adds the time since the last change weighted by the amount of widgets in the queue to the running integral. This must be called
+     * just before the amount of widgets changes, so the integral only needs updating when a widget enters or leaves rather than on every event.
      */
-    public void gatherStats() {
-        count++;
-        totalWidgets += widgets.size();
+    private void accumulate() {
+        double currentTime = line.getCurrentTime();
+        double area = size * (currentTime - lastChange);
+        widgetTime += area;
+        batchMeans.addInterval(lastChange,currentTime,WIDGET_TIME,size);
+        lastChange = currentTime;
     }
 
     public double getAverageTimeSpent() {
         //don't forget to include all the widgets still in the queue
         double extraTimeSpent = 0;
-        for(StoredWidget widget : widgets) {
-            double delta = line.getCompletionTime() - widget.getTimeStamp();
-            extraTimeSpent += delta;
+        for(int i=0,slot=head;i<size;i++) {
+            if(timeStamps[slot]>=line.getWarmupTime())
+                extraTimeSpent += line.getCompletionTime() - timeStamps[slot];
+            if(++slot==qMax)
+                slot = 0;
         }
 
         double total = totalTimeSpent + extraTimeSpent;
@@ -129,19 +199,76 @@ public class InterStageQueue {
     }
 
     /**
-     * This stat is recorded by checking the amount of widgets in the queue on each event tick using {@link #gatherStats()}
+     * This stat is the time average of the amount of widgets in the queue over the whole simulation. The widgets still in the queue
+     * are counted up to the completion time.
      *
      * @return The average amount of widgets in the queue at any time.
      */
     public double getAverageWidgetsInQueue() {
-        return ((double) totalWidgets)/count;
+        double total = widgetTime + size * (line.getCompletionTime() - lastChange);
+        return total/line.getMeasuredTime();
+    }
+
+    /**
+     * @param time A time no earlier than the last widget entered or left the queue
+     * @return The amount of widgets in the queue integrated over time up to the given time
+     */
+    double getWidgetTime(double time) {
+        return widgetTime + size * (time - lastChange);
+    }
+
+    /**
+     * @return The time spent in the queue by every counted widget that has left it
+     */
+    double getTotalTimeSpent() {
+        return totalTimeSpent;
+    }
+
+    /**
+     * @return The amount of counted widgets that have left the queue. A few widgets that entered before the warm-up
+     * was deleted may be left in the queue, so this is an estimate until they are gone.
+     */
+    int getWidgetsLeft() {
+        return widgetsEntered - size;
+    }
+
+    /**
+     * Forgets everything measured so far, used to delete the warm-up of a run. Only widgets that enter the queue from
+     * now on are counted in the average time spent.
+     *
+     * @param time The time the statistics start from
+     */
+    void resetStatistics(double time) {
+        widgetTime = 0;
+        lastChange = time;
+        totalTimeSpent = 0;
+        widgetsEntered = 0;
+        batchMeans.reset(time);
+        for(QuantileEstimator wait : waits)
+            wait.reset();
+    }
+
+    /**
+     * @return The time spent by the widgets that left, the widgets that left and the widgets in the queue over time in
+     * each batch of the run, see {@link #TIME_SPENT}, {@link #LEFT} and {@link #WIDGET_TIME}
+     */
+    public BatchMeans getBatchMeans() {
+        return batchMeans;
+    }
+
+    /**
+     * @param quantile The index of one of the quantiles the line asked for, see {@link ProductionLine#setWaitQuantiles(double...)}
+     * @return The estimate of that quantile of the time spent in the queue by the widgets that have left it
+     */
+    public double getWaitQuantile(int quantile) {
+        return waits[quantile].getQuantile();
     }
 
     /**
      * @return The amount of widgets in storage at any time.
      */
     public int getAmountInStorage() {
-        return widgets.size();
+        return size;
     }
 
     /**
@@ -151,13 +278,78 @@ public class InterStageQueue {
         return name;
     }
 
+    /**
+     * @return The production line this queue sits on
+     */
+    protected ProductionLine getLine() {
+        return line;
+    }
+
+    /**
+     * @return The id of the queue. Ids are given out in the order the queues are created starting from 0.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Marks a stage before this queue as blocked until a widget is taken from the queue.
+     *
+     * @param stage A stage before this queue holding a finished widget
+     */
+    public void addBlocked(Stage stage) {
+        blocked.add(stage);
+    }
+
+    /**
+     * Marks a stage after this queue as starved until a widget is added to the queue.
+     *
+     * @param stage A stage after this queue without a widget
+     */
+    public void addStarved(Stage stage) {
+        starved.add(stage);
+    }
+
+    /**
+     * Takes a copy of everything about the queue that changes as the simulation runs, so an optimistic
+     * {@link ParallelLine} can roll the queue back.
+     *
+     * @return The saved state
+     */
+    State save() {
+        return new State(this);
+    }
+
+    /**
+     * Puts the queue back to a saved state. The state is copied, so it can be restored again later.
+     *
+     * @param state A state saved from this queue
+     */
+    void restore(State state) {
+        //the saved widgets are put back from the start of the ring, the widgets of the line are restored with it
+        System.arraycopy(state.widgets,0,widgets,0,state.widgets.length);
+        System.arraycopy(state.timeStamps,0,timeStamps,0,state.timeStamps.length);
+        head = 0;
+        size = state.widgets.length;
+        blocked = state.blocked.copy();
+        starved = state.starved.copy();
+        widgetTime = state.widgetTime;
+        batchMeans = state.batchMeans.copy();
+        for(int i=0;i<waits.length;i++)
+            waits[i] = state.waits[i].copy();
+        lastChange = state.lastChange;
+        totalTimeSpent = state.totalTimeSpent;
+        widgetsEntered = state.widgetsEntered;
+    }
+
     /**
      * Adds a stage so that it sits after this queue.
      *
      * @param stage The stage that is after this queue
      */
     public void addNext(Stage stage) {
-        this.next.add(stage);
+        this.next = Arrays.copyOf(next,next.length+1);
+        this.next[next.length-1] = stage;
     }
 
     /**
@@ -166,7 +358,8 @@ public class InterStageQueue {
      * @param stage The stage that sits before this queue.
      */
     public void addPrev(Stage stage) {
-        this.prev.add(stage);
+        this.prev = Arrays.copyOf(prev,prev.length+1);
+        this.prev[prev.length-1] = stage;
     }
 
     /**
@@ -179,4 +372,42 @@ public class InterStageQueue {
     public String toString() {
         return "InterStageQueue[name="+getName()+", max="+qMax+", inStorage="+getAmountInStorage()+"]";
     }
+
+    /**
+     * The fields of a queue that change as the simulation runs, see {@link #save()}.
+     */
+    static class State {
+
+        private final int[] widgets; //oldest first
+        private final double[] timeStamps;
+        private final WaiterList blocked;
+        private final WaiterList starved;
+        private final double widgetTime;
+        private final BatchMeans batchMeans;
+        private final QuantileEstimator[] waits;
+        private final double lastChange;
+        private final double totalTimeSpent;
+        private final int widgetsEntered;
+
+        protected State(InterStageQueue queue) {
+            this.widgets = new int[queue.size];
+            this.timeStamps = new double[queue.size];
+            for(int i=0,slot=queue.head;i<queue.size;i++) {
+                widgets[i] = queue.widgets[slot];
+                timeStamps[i] = queue.timeStamps[slot];
+                if(++slot==queue.qMax)
+                    slot = 0;
+            }
+            this.blocked = queue.blocked.copy();
+            this.starved = queue.starved.copy();
+            this.widgetTime = queue.widgetTime;
+            this.batchMeans = queue.batchMeans.copy();
+            this.waits = new QuantileEstimator[queue.waits.length];
+            for(int i=0;i<waits.length;i++)
+                waits[i] = queue.waits[i].copy();
+            this.lastChange = queue.lastChange;
+            this.totalTimeSpent = queue.totalTimeSpent;
+            this.widgetsEntered = queue.widgetsEntered;
+        }
+    }
 }
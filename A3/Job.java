@@ -4,20 +4,21 @@
  * Author: Jacob Boyce
  * Course: SENG2200
  * Program Description: Represents a task that needs to be completed by a stage at some time in a discrete
- * event simulation. This will run the push() method for that stage.
+ * event simulation. The simulation itself stores events as primitives, this object is only used by the
+ * reference {@link JobEventList}.
  */
 public class Job implements Comparable<Job> {
 
     private final double completionTime;
-    private final Stage stage;
+    private final int stage;
 
     /**
      * Creates a new job
      *
      * @param completionTime When the job is expected to be completed
-     * @param stage The stage for which this job is completing a task for. This must not be null.
+     * @param stage The id of the stage for which this job is completing a task for.
      */
-    public Job(double completionTime, Stage stage) {
+    public Job(double completionTime, int stage) {
         this.completionTime = completionTime;
         this.stage = stage;
     }
@@ -42,10 +43,9 @@ public class Job implements Comparable<Job> {
     }
 
     /**
-     * Completes the task of the job. This should only be used as a part of the
-     * discrete event simulation.
+     * @return The id of the stage this job completes a task for
      */
-    public void run() {
-        stage.push();
+    public int getStage() {
+        return stage;
     }
 }
@@ -0,0 +1,52 @@
+import java.util.PriorityQueue;
+
+/**
+ * File: JobEventList.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: An {@link EventList} backed by a {@link PriorityQueue} of {@link Job} objects. This is how the simulation
+ * originally stored its events and is kept as the reference that the other event lists are checked and benchmarked
+ * against. Every event allocates a job so this should not be used for long runs.
+ */
+public class JobEventList implements EventList {
+
+    private final PriorityQueue<Job> jobs;
+
+    public JobEventList() {
+        this(new PriorityQueue<>());
+    }
+
+    private JobEventList(PriorityQueue<Job> jobs) {
+        this.jobs = jobs;
+    }
+
+    @Override
+    public void add(double time, int stage) {
+        jobs.add(new Job(time,stage));
+    }
+
+    @Override
+    public double firstTime() {
+        return jobs.element().getCompletionTime();
+    }
+
+    @Override
+    public int poll() {
+        return jobs.remove().getStage();
+    }
+
+    @Override
+    public int size() {
+        return jobs.size();
+    }
+
+    /**
+     * Copying a priority queue keeps the order of its array, so the copy breaks ties the same way. Jobs never change so
+     * they are shared.
+     */
+    @Override
+    public JobEventList copy() {
+        return new JobEventList(new PriorityQueue<>(jobs));
+    }
+}
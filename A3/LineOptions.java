@@ -0,0 +1,489 @@
+/**
+ * File: LineOptions.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Everything needed to build a {@link ProductionLine}. This is passed to {@link Replications} and
+ * {@link Sweep} so that every replication of a scenario is built in exactly the same way. The master seed is kept here
+ * as well, the random stream of each replication and each stage is split from it, so a run can be repeated exactly by
+ * giving the same seed again.
+ */
+public class LineOptions {
+
+    private final int M;
+    private final int N;
+    private final int qMax;
+    private Topology topology;
+    private String eventList;
+    private int wakeOrder;
+    private int batchSize;
+    private long seed;
+    private String variance;
+    private String distribution;
+    private int topRoutes; //amount of routes to print after a single run, 0 to not print them
+    private double completionTime;
+    private int segments; //the amount of threads a single run is split over, 1 to run it sequentially
+    private boolean optimistic; //whether the segments run with Time Warp rather than conservatively
+    private double warmup; //when the statistics of each run start, ignored if the warm-up is detected
+    private boolean detectWarmup;
+    private double precision; //the relative half width each run stops at, 0 to run until the completion time
+    private int[] metrics; //the statistics that must reach the precision, see StoppingRule
+    private boolean intervals; //whether a single run is printed with confidence intervals from its batch means
+    private double[] percentiles; //the percentiles of the lead time and queue waits to print, from 0 to 100, empty for none
+
+    /**
+     * Creates options for the line of the assignment specification. The line can be changed with {@link #setTopology(Topology)}.
+     *
+     * @param M The average production time
+     * @param N The range of production times
+     * @param qMax The maximum capacity of the queues. This must not be negative
+     */
+    public LineOptions(int M, int N, int qMax) {
+        if(qMax<0)
+            throw new IllegalArgumentException("The queue cannot have a negative capacity");
+        this.M = M;
+        this.N = N;
+        this.qMax = qMax;
+        this.topology = Topology.assignment();
+        this.eventList = "heap";
+        this.wakeOrder = WaiterList.ID;
+        this.seed = System.nanoTime();
+        this.variance = "common";
+        this.distribution = "uniform";
+        this.completionTime = 10000000;
+        this.segments = 1;
+        this.metrics = new int[]{StoppingRule.THROUGHPUT};
+        this.percentiles = new double[0];
+    }
+
+    /**
+     * Copies every option apart from M, N and qMax.
+     *
+     * @param M The average production time
+     * @param N The range of production times
+     * @param qMax The maximum capacity of the queues. This must not be negative
+     * @return A copy of these options with the new values of M, N and qMax
+     */
+    public LineOptions withScenario(int M, int N, int qMax) {
+        LineOptions options = new LineOptions(M,N,qMax);
+        options.topology = topology;
+        options.eventList = eventList;
+        options.wakeOrder = wakeOrder;
+        options.batchSize = batchSize;
+        options.seed = seed;
+        options.variance = variance;
+        options.distribution = distribution;
+        options.topRoutes = topRoutes;
+        options.completionTime = completionTime;
+        options.segments = segments;
+        options.optimistic = optimistic;
+        options.warmup = warmup;
+        options.detectWarmup = detectWarmup;
+        options.precision = precision;
+        options.metrics = metrics;
+        options.intervals = intervals;
+        options.percentiles = percentiles;
+        return options;
+    }
+
+    /**
+     * Builds a new production line from these options.
+     *
+     * @param seed The seed of the line
+     * @return A line that is ready to {@link ProductionLine#run()}
+     */
+    public ProductionLine create(long seed) {
+        return create(new RandomStream(seed));
+    }
+
+    /**
+     * Builds a new production line from these options.
+     *
+     * @param stream The stream the random streams of the stages are split from. This is not changed.
+     * @return A line that is ready to {@link ProductionLine#run()}
+     */
+    public ProductionLine create(RandomStream stream) {
+        ProductionLine line = createEmpty(stream);
+        line.buildProductionLine(topology,M,N,qMax,distribution);
+        return line;
+    }
+
+    /**
+     * Creates a line with these options that has not been built yet, which {@link ParallelLine} builds its segments into.
+     *
+     * @param stream The stream the random streams of the stages are split from. This is not changed.
+     * @return An empty line
+     */
+    ProductionLine createEmpty(RandomStream stream) {
+        ProductionLine line = new ProductionLine(stream,createEventList());
+        line.setWakeOrder(wakeOrder);
+        line.setBatchSize(batchSize);
+        line.setCompletionTime(completionTime);
+        if(detectWarmup)
+            line.detectWarmup();
+        else if(warmup>0)
+            line.setWarmup(warmup);
+        if(precision>0)
+            line.setStoppingRule(new StoppingRule(precision,metrics));
+        if(percentiles.length>0) {
+            line.getWarehouse().recordLeadTimes();
+            line.setWaitQuantiles(getQuantiles());
+        }
+        return line;
+    }
+
+    /**
+     * Builds and runs a line from these options, split over several threads if {@link #setSegments(int)} asks for it.
+     *
+     * @param stream The stream the random streams of the stages are split from. This is not changed.
+     * @return The line after it has run, ready to print or take statistics from
+     */
+    public ProductionLine run(RandomStream stream) {
+        if(segments>1) {
+            ParallelLine parallel = new ParallelLine(this,stream,segments);
+            parallel.run();
+            return parallel.getLine();
+        }
+        ProductionLine line = create(stream);
+        line.run();
+        return line;
+    }
+
+    /**
+     * Builds the line, cut into segments if {@link #setSegments(int)} asks for it, without running it. This finds the
+     * options that only fail once the line is built, such as a cut where the stages before it can take no time, before
+     * any time is spent running.
+     *
+     * @throws IllegalArgumentException if the line cannot be built from these options
+     */
+    public void check() {
+        if(segments>1)
+            new ParallelLine(this,new RandomStream(seed),segments);
+        else
+            create(new RandomStream(seed));
+    }
+
+    /**
+     * @return A new empty event list of the chosen kind
+     */
+    private EventList createEventList() {
+        switch (eventList) {
+            case "heap":
+                return new HeapEventList();
+            case "calendar":
+                return new CalendarEventList();
+            case "reference":
+                return new JobEventList();
+            default:
+                throw new IllegalStateException("Unknown event list "+eventList);
+        }
+    }
+
+    /**
+     * Chooses the future event list of the simulation.
+     *
+     * @param eventList One of heap, a primitive binary heap, calendar, a calendar queue which is faster for lines with a
+     *                  large amount of stages, or reference, the priority queue of job objects the simulation originally used.
+     * @throws IllegalArgumentException if the event list is not known
+     */
+    public void setEventList(String eventList) {
+        if(!eventList.equals("heap") && !eventList.equals("calendar") && !eventList.equals("reference"))
+            throw new IllegalArgumentException("Unknown event list '"+eventList+"' expected heap, calendar or reference");
+        this.eventList = eventList;
+    }
+
+    /**
+     * Chooses which stage a queue wakes first when several stages are blocked or starved on it.
+     *
+     * @param wakeOrder One of fifo, the stage that has waited longest, lifo, the stage that started waiting last, or
+     *                  id, the stage with the lowest id which matches the order stages were tried in before waiter lists
+     * @throws IllegalArgumentException if the order is not known
+     */
+    public void setWakeOrder(String wakeOrder) {
+        this.wakeOrder = WaiterList.parseOrder(wakeOrder);
+    }
+
+    /**
+     * @param topology The layout of the line. By default this is the line of the assignment specification.
+     */
+    public void setTopology(Topology topology) {
+        this.topology = topology;
+    }
+
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @param topRoutes The amount of the most common routes to print after a single run, 0 to not print them. This must
+     *                  not be negative.
+     */
+    public void setTopRoutes(int topRoutes) {
+        if(topRoutes<0)
+            throw new IllegalArgumentException("The amount of routes cannot be negative");
+        this.topRoutes = topRoutes;
+    }
+
+    /**
+     * @param seed The master seed of the experiment. By default this is taken from the current time.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param batchSize The amount of processing times each stage draws at once, or 0 to draw each one when it is needed.
+     *                  This does not change the results of the simulation. This must not be negative.
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize<0)
+            throw new IllegalArgumentException("The batch size cannot be negative");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Chooses the distribution of processing times of every stage that the topology does not give one.
+     *
+     * @param distribution The description of the distribution, see {@link ServiceTime}. By default this is uniform.
+     * @throws IllegalArgumentException if the distribution is not valid
+     */
+    public void setDistribution(String distribution) {
+        ServiceTime.create(distribution,1,1); //only to check the distribution is valid
+        this.distribution = distribution;
+    }
+
+    /**
+     * Chooses how the random streams of replications and scenarios relate to each other.
+     *
+     * @param variance One of independent, every scenario of a sweep or comparison gets its own streams, common, every
+     *                 scenario uses the same stream for the same stage of the same replication (common random numbers),
+     *                 or antithetic, common streams where every replication is also run with 1 - u for every uniform
+     *                 number u and the pair is averaged into one observation
+     * @throws IllegalArgumentException if the mode is not known
+     */
+    public void setVariance(String variance) {
+        if(!variance.equals("independent") && !variance.equals("common") && !variance.equals("antithetic"))
+            throw new IllegalArgumentException("Unknown variance reduction '"+variance+"' expected independent, common or antithetic");
+        this.variance = variance;
+    }
+
+    /**
+     * Checks that antithetic pairs are meaningful for the distribution of every stage, see
+     * {@link ServiceTime#isAntithetic()}. This is checked once every option has been set, as the variance, the
+     * distribution and the topology can be given in any order.
+     *
+     * @throws IllegalArgumentException if the runs are antithetic and a stage uses a distribution that does not pair
+     */
+    public void checkVariance() {
+        if(!isAntithetic())
+            return;
+        for(int stage=0;stage<topology.getStageCount();stage++) {
+            String named = topology.getDistribution(stage)!=null ? topology.getDistribution(stage) : distribution;
+            if(!ServiceTime.create(named,1,1).isAntithetic())
+                throw new IllegalArgumentException("Antithetic runs need every stage to use uniform, erlang:k or " +
+                        "empirical processing times, but "+topology.getStageName(stage)+" uses "+named);
+        }
+    }
+
+    /**
+     * @return True if scenarios share the streams of each replication
+     */
+    public boolean isCommon() {
+        return !variance.equals("independent");
+    }
+
+    /**
+     * @return True if each replication is an averaged antithetic pair of runs
+     */
+    public boolean isAntithetic() {
+        return variance.equals("antithetic");
+    }
+
+    /**
+     * @param completionTime How long each run is simulated for. By default this is 10,000,000.
+     */
+    public void setCompletionTime(double completionTime) {
+        if(!(completionTime>0))
+            throw new IllegalArgumentException("The completion time must be positive");
+        this.completionTime = completionTime;
+    }
+
+    /**
+     * Splits each run over several threads, see {@link ParallelLine}. The results match a sequential run statistically
+     * but not exactly.
+     *
+     * @param segments The amount of segments to cut the line into, 1 to run it on a single thread
+     */
+    public void setSegments(int segments) {
+        if(segments<1)
+            throw new IllegalArgumentException("A line needs at least one segment");
+        this.segments = segments;
+    }
+
+    public double getCompletionTime() {
+        return completionTime;
+    }
+
+    /**
+     * Chooses how the segments of a split run are kept in step, see {@link ParallelLine}.
+     *
+     * @param synchronisation One of conservative, the default, where a segment never runs an event before it is safe,
+     *                        which needs the stages before each cut to have a positive minimum service time, or
+     *                        optimistic, where segments run ahead and roll back when they were wrong
+     * @throws IllegalArgumentException if the mode is not known
+     */
+    public void setSynchronisation(String synchronisation) {
+        if(!synchronisation.equals("conservative") && !synchronisation.equals("optimistic"))
+            throw new IllegalArgumentException("Unknown synchronisation '"+synchronisation+"' expected conservative or optimistic");
+        this.optimistic = synchronisation.equals("optimistic");
+    }
+
+    public boolean isOptimistic() {
+        return optimistic;
+    }
+
+    /**
+     * Chooses how the warm-up of each run is deleted, see {@link ProductionLine#setWarmup(double)}.
+     *
+     * @param warmup none to keep the whole run, the default, mser to detect the warm-up with {@link WarmupDetector}, or
+     *               the time the statistics start from
+     * @throws IllegalArgumentException if the value is not one of these or is a negative time
+     */
+    public void setWarmup(String warmup) {
+        if(warmup.equals("none") || warmup.equals("mser")) {
+            this.detectWarmup = warmup.equals("mser");
+            this.warmup = 0;
+            return;
+        }
+
+        double time;
+        try {
+            time = Double.parseDouble(warmup);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Unknown warm-up '"+warmup+"' expected none, mser or a time");
+        }
+        if(!(time>=0))
+            throw new IllegalArgumentException("The warm-up cannot be negative");
+        this.detectWarmup = false;
+        this.warmup = time;
+    }
+
+    /**
+     * Stops each run once its statistics are precise enough rather than at the completion time, which then only bounds
+     * how long a run may go on for, see {@link StoppingRule}.
+     *
+     * @param precision The largest half width of the 95% confidence interval as a fraction of the mean, 0 to always run
+     *                  until the completion time
+     * @throws IllegalArgumentException if the precision is negative
+     */
+    public void setPrecision(double precision) {
+        if(!(precision>=0))
+            throw new IllegalArgumentException("The precision cannot be negative");
+        this.precision = precision;
+    }
+
+    /**
+     * @param metrics A comma separated list of the statistics that must reach the precision, see
+     *                {@link StoppingRule#parseMetrics(String)}
+     * @throws IllegalArgumentException if a metric is not known
+     */
+    public void setMetrics(String metrics) {
+        this.metrics = StoppingRule.parseMetrics(metrics);
+    }
+
+    /**
+     * @param intervals none to print a single run as the assignment asks, or batch to follow each statistic with the
+     *                  half width of its confidence interval from the batch means of the run
+     * @throws IllegalArgumentException if the value is neither
+     */
+    public void setIntervals(String intervals) {
+        if(!intervals.equals("none") && !intervals.equals("batch"))
+            throw new IllegalArgumentException("Unknown intervals '"+intervals+"' expected none or batch");
+        this.intervals = intervals.equals("batch");
+    }
+
+    public boolean isIntervals() {
+        return intervals;
+    }
+
+    /**
+     * Parses a comma separated list of percentiles such as 50,90,99,99.9 to print of the lead time of the widgets,
+     * from being created to reaching the warehouse, and of the time they wait in each queue.
+     *
+     * @param percentiles The percentiles, each from 0 to 100
+     * @throws IllegalArgumentException if a percentile is not a number from 0 to 100
+     */
+    public void setPercentiles(String percentiles) {
+        String[] parts = percentiles.split(",");
+        double[] values = new double[parts.length];
+        for(int i=0;i<parts.length;i++) {
+            try {
+                values[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid percentile '"+parts[i]+"'");
+            }
+            if(!(values[i]>=0 && values[i]<=100))
+                throw new IllegalArgumentException("A percentile must be from 0 to 100 but got "+parts[i]);
+        }
+        this.percentiles = values;
+    }
+
+    /**
+     * @return The percentiles of the lead time and queue waits to print, from 0 to 100, empty to print none
+     */
+    public double[] getPercentiles() {
+        return percentiles;
+    }
+
+    /**
+     * @return The percentiles as quantiles from 0 to 1
+     */
+    public double[] getQuantiles() {
+        double[] quantiles = new double[percentiles.length];
+        for(int i=0;i<quantiles.length;i++)
+            quantiles[i] = percentiles[i]/100;
+        return quantiles;
+    }
+
+    /**
+     * @return True if each run stops once its statistics are precise enough
+     */
+    public boolean isSequential() {
+        return precision>0;
+    }
+
+    /**
+     * @return True if the warm-up of each run is detected with MSER-5
+     */
+    public boolean isWarmupDetected() {
+        return detectWarmup;
+    }
+
+    public int getSegments() {
+        return segments;
+    }
+
+    public String getDistribution() {
+        return distribution;
+    }
+
+    public int getTopRoutes() {
+        return topRoutes;
+    }
+
+    public int getM() {
+        return M;
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public int getQMax() {
+        return qMax;
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * File: LineStatistics.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: An immutable snapshot of the statistics of a single run of a {@link ProductionLine}. This holds the
+ * same figures that {@link ProductionLine#printStatistics()} prints so that the results of many independent runs can be
+ * combined by a {@link ReplicationSummary}. Each table is stored as parallel arrays indexed by the row.
+ */
+public class LineStatistics {
+
+    //stage table
+    private final String[] stageNames;
+    private final double[] workPercentage;
+    private final double[] starvationTime;
+    private final double[] blockedTime;
+
+    //queue table
+    private final String[] queueNames;
+    private final double[] averageTimeSpent;
+    private final double[] averageWidgets;
+
+    //production path table
+    private final String[] pathNames;
+    private final double[] pathCounts;
+
+    private final double warmupTime; //when the statistics started, 0 unless the warm-up was deleted
+    private final Histogram leadTimes; //null unless the warehouse recorded lead times
+    private final double[][] waitQuantiles; //indexed by queue then quantile, null unless the queues estimated them
+
+    /**
+     * Creates a new snapshot. All arrays of the same table must have the same length.
+     *
+     * @param stageNames The name of each stage
+     * @param workPercentage The percentage of time each stage spent working
+     * @param starvationTime The time each stage spent starved
+     * @param blockedTime The time each stage spent blocked
+     * @param queueNames The name of each queue
+     * @param averageTimeSpent The average time a widget spent in each queue
+     * @param averageWidgets The average amount of widgets in each queue
+     * @param pathNames The name of each production path
+     * @param pathCounts The amount of widgets that went through each production path
+     * @param warmupTime When the statistics started, 0 unless the warm-up was deleted
+     * @param leadTimes The lead times of the finished widgets, or null if they were not recorded. This must not be
+     *                  changed afterwards.
+     * @param waitQuantiles The estimated quantiles of the time spent in each queue, indexed by queue then quantile, or
+     *                      null if they were not estimated
+     */
+    public LineStatistics(String[] stageNames, double[] workPercentage, double[] starvationTime, double[] blockedTime,
+                          String[] queueNames, double[] averageTimeSpent, double[] averageWidgets,
+                          String[] pathNames, double[] pathCounts, double warmupTime, Histogram leadTimes,
+                          double[][] waitQuantiles) {
+        this.stageNames = stageNames;
+        this.workPercentage = workPercentage;
+        this.starvationTime = starvationTime;
+        this.blockedTime = blockedTime;
+        this.queueNames = queueNames;
+        this.averageTimeSpent = averageTimeSpent;
+        this.averageWidgets = averageWidgets;
+        this.pathNames = pathNames;
+        this.pathCounts = pathCounts;
+        this.warmupTime = warmupTime;
+        this.leadTimes = leadTimes;
+        this.waitQuantiles = waitQuantiles;
+    }
+
+    public int getStageCount() {
+        return stageNames.length;
+    }
+
+    public String getStageName(int stage) {
+        return stageNames[stage];
+    }
+
+    public double getWorkPercentage(int stage) {
+        return workPercentage[stage];
+    }
+
+    public double getStarvationTime(int stage) {
+        return starvationTime[stage];
+    }
+
+    public double getBlockedTime(int stage) {
+        return blockedTime[stage];
+    }
+
+    public int getQueueCount() {
+        return queueNames.length;
+    }
+
+    public String getQueueName(int queue) {
+        return queueNames[queue];
+    }
+
+    public double getAverageTimeSpent(int queue) {
+        return averageTimeSpent[queue];
+    }
+
+    public double getAverageWidgets(int queue) {
+        return averageWidgets[queue];
+    }
+
+    public int getPathCount() {
+        return pathNames.length;
+    }
+
+    public String getPathName(int path) {
+        return pathNames[path];
+    }
+
+    public double getWidgets(int path) {
+        return pathCounts[path];
+    }
+
+    public double getWarmupTime() {
+        return warmupTime;
+    }
+
+    /**
+     * @return The lead times of the finished widgets, or null if they were not recorded. This must not be modified.
+     */
+    public Histogram getLeadTimes() {
+        return leadTimes;
+    }
+
+    /**
+     * @return The amount of quantiles of the time spent in each queue, 0 if they were not estimated
+     */
+    public int getWaitQuantileCount() {
+        return waitQuantiles==null || waitQuantiles.length==0 ? 0 : waitQuantiles[0].length;
+    }
+
+    public double getWaitQuantile(int queue, int quantile) {
+        return waitQuantiles[queue][quantile];
+    }
+
+    /**
+     * Takes the difference of two runs figure by figure. This is how paired scenarios are compared.
+     *
+     * @param baseline A run of a line
+     * @param alternative A run of a line with the same stages, queues and paths
+     * @return The figures of the alternative minus the figures of the baseline, named after the baseline
+     * @throws IllegalArgumentException if the two lines have different layouts
+     */
+    public static LineStatistics difference(LineStatistics baseline, LineStatistics alternative) {
+        return combine(baseline,-1,alternative,1);
+    }
+
+    /**
+     * Averages two runs figure by figure. This is how an antithetic pair is turned into one observation.
+     *
+     * @param first A run of a line
+     * @param second A run of a line with the same stages, queues and paths
+     * @return The average of the two runs, named after the first
+     * @throws IllegalArgumentException if the two lines have different layouts
+     */
+    public static LineStatistics average(LineStatistics first, LineStatistics second) {
+        return combine(first,0.5,second,0.5);
+    }
+
+    private static LineStatistics combine(LineStatistics a, double weightA, LineStatistics b, double weightB) {
+        if(a.getStageCount()!=b.getStageCount() || a.getQueueCount()!=b.getQueueCount() || a.getPathCount()!=b.getPathCount())
+            throw new IllegalArgumentException("Cannot pair the statistics of lines with different layouts");
+
+        return new LineStatistics(a.stageNames,combine(a.workPercentage,weightA,b.workPercentage,weightB),
+                combine(a.starvationTime,weightA,b.starvationTime,weightB),combine(a.blockedTime,weightA,b.blockedTime,weightB),
+                a.queueNames,combine(a.averageTimeSpent,weightA,b.averageTimeSpent,weightB),
+                combine(a.averageWidgets,weightA,b.averageWidgets,weightB),
+                a.pathNames,combine(a.pathCounts,weightA,b.pathCounts,weightB),weightA*a.warmupTime + weightB*b.warmupTime,
+                pool(a.leadTimes,weightA,b.leadTimes,weightB),combine(a.waitQuantiles,weightA,b.waitQuantiles,weightB));
+    }
+
+    private static double[][] combine(double[][] a, double weightA, double[][] b, double weightB) {
+        if(a==null || b==null)
+            return null;
+        double[][] result = new double[a.length][];
+        for(int i=0;i<a.length;i++)
+            result[i] = combine(a[i],weightA,b[i],weightB);
+        return result;
+    }
+
+    /**
+     * A difference of two distributions is not a distribution, so lead times are only kept when averaging, where the
+     * widgets of both runs are pooled.
+     */
+    private static Histogram pool(Histogram a, double weightA, Histogram b, double weightB) {
+        if(a==null || b==null || weightA<0 || weightB<0)
+            return null;
+        Histogram pooled = a.copy();
+        pooled.merge(b);
+        return pooled;
+    }
+
+    private static double[] combine(double[] a, double weightA, double[] b, double weightB) {
+        double[] result = new double[a.length];
+        for(int i=0;i<a.length;i++)
+            result[i] = weightA*a[i] + weightB*b[i];
+        return result;
+    }
+}
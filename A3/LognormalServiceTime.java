@@ -0,0 +1,48 @@
+/**
+ * File: LognormalServiceTime.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Lognormally distributed service times, exp(mu + sigma Z) for a standard normal Z drawn with the
+ * {@link Ziggurat} method. The distribution is described by its own mean and standard deviation, and mu and sigma of the
+ * underlying normal are worked out once when it is created.
+ */
+public class LognormalServiceTime implements ServiceTime {
+
+    private final double mean;
+    private final double mu;
+    private final double sigma;
+
+    /**
+     * @param mean The average service time. This must be positive.
+     * @param deviation The standard deviation of the service time. This must not be negative.
+     */
+    public LognormalServiceTime(double mean, double deviation) {
+        if(mean<=0)
+            throw new IllegalArgumentException("The mean of a lognormal distribution must be positive");
+        if(deviation<0)
+            throw new IllegalArgumentException("The standard deviation cannot be negative");
+        double variance = Math.log(1 + (deviation*deviation)/(mean*mean));
+        this.mean = mean;
+        this.sigma = Math.sqrt(variance);
+        this.mu = Math.log(mean) - variance/2;
+    }
+
+    @Override
+    public double sample(RandomStream random) {
+        return Math.exp(mu + sigma * Ziggurat.normal(random));
+    }
+
+    @Override
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return 0, any time down to 0 has a positive density
+     */
+    @Override
+    public double getMinimum() {
+        return 0;
+    }
+}
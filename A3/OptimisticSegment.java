@@ -0,0 +1,389 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * File: OptimisticSegment.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: One segment of a {@link ParallelLine} kept in step with the others by Time Warp. The segment runs
+ * every event it has without waiting to hear from its neighbours. When a message turns up for a time it has already run
+ * past, a straggler, it rolls back:
+ *   - the line is restored from the last checkpoint before the straggler. A checkpoint is a copy of the whole segment
+ *     taken every few events, so saving costs about the same as running the events in between
+ *   - every message sent since the straggler is cancelled with an anti-message, which removes the message if it has not
+ *     been run yet and otherwise rolls the receiver back in turn
+ *   - the events between the checkpoint and the straggler are run again, sending nothing as their messages were never
+ *     cancelled, then the straggler and everything after it are run as usual
+ * No message can ever arrive for a time before the global virtual time, the earliest time any segment or any message in
+ * flight still has to run, so {@link ParallelLine} works it out every so often and each segment throws away the
+ * checkpoints and messages it can no longer roll back to. Once it has passed the completion time every segment holds its
+ * final state.
+ *
+ * Events are ordered by time, then releases before arrivals before jobs, then by the order messages were sent, so a
+ * straggler is any message that orders before the last event run.
+ */
+class OptimisticSegment implements Runnable {
+
+    private static final int RELEASE = 0;
+    private static final int ARRIVAL = 1;
+    private static final int JOB = 2;
+
+    private static final int BATCH = 64; //events run between checks of the inbox
+    private static final int SPINS = 1000; //how many times a segment with nothing to run spins before it yields its thread
+
+    private final ParallelLine owner;
+    private final ProductionLine line;
+    private final double completionTime;
+    private final Lock running; //held while running a batch, the global virtual time is only worked out between batches
+    private final int checkpointInterval;
+    BoundaryQueue inbound; //null for the first segment
+    BoundaryQueue outbound; //null for the last segment
+    OptimisticSegment before;
+    OptimisticSegment after;
+
+    //messages from the neighbours, the only state shared between threads
+    private final Queue<Envelope> inbox;
+    //messages the boundary queues sent during the last event, forwarded once the event is over
+    final Queue<BoundaryQueue.Message> arrivalOutbox;
+    final Queue<BoundaryQueue.Message> releaseOutbox;
+
+    private final PriorityQueue<Envelope> waiting; //messages received but not run yet
+    private final Deque<Envelope> processed; //messages run since the oldest checkpoint, in the order they were run
+    private final Deque<Envelope> sent; //messages sent since the global virtual time, in the order they were sent
+    private final Deque<Checkpoint> checkpoints;
+    private int sinceCheckpoint;
+    private long nextId;
+
+    //the order of the last event run, and of the straggler while the events before it are run again
+    private double lastTime;
+    private int lastKind;
+    private long lastId;
+    private double coastTime;
+    private int coastKind;
+    private long coastId;
+
+    private volatile double globalTime;
+    private volatile boolean done;
+    private long rollbacks;
+
+    /**
+     * @param owner The line the segment is part of
+     * @param line The segment
+     * @param completionTime When the simulation ends
+     * @param running The lock to hold while running events
+     */
+    OptimisticSegment(ParallelLine owner, ProductionLine line, double completionTime, Lock running) {
+        this.owner = owner;
+        this.line = line;
+        this.completionTime = completionTime;
+        this.running = running;
+        this.checkpointInterval = Math.max(32,line.getStageCount());
+        this.inbox = new ConcurrentLinkedQueue<>();
+        this.arrivalOutbox = new ArrayDeque<>();
+        this.releaseOutbox = new ArrayDeque<>();
+        this.waiting = new PriorityQueue<>();
+        this.processed = new ArrayDeque<>();
+        this.sent = new ArrayDeque<>();
+        this.checkpoints = new ArrayDeque<>();
+        this.lastTime = Double.NEGATIVE_INFINITY;
+        this.coastTime = Double.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    public void run() {
+        try {
+            simulate();
+        } catch (Throwable e) {
+            owner.fail(e);
+        }
+    }
+
+    /**
+     * Starts the stages of the segment and takes the first checkpoint. Every segment is started before any thread runs,
+     * so the global virtual time never sees a segment that has not scheduled its first events yet.
+     */
+    void start() {
+        line.start();
+        forward();
+        checkpoint();
+    }
+
+    private void simulate() {
+        int idle = 0;
+        while (!done && !owner.hasFailed()) {
+            boolean progressed = false;
+            running.lock();
+            try {
+                receive();
+                collectFossils();
+                for(int i=0;i<BATCH && step();i++)
+                    progressed = true;
+            } finally {
+                running.unlock();
+            }
+
+            if(progressed) {
+                idle = 0;
+            } else if(++idle<SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        line.finish();
+    }
+
+    /**
+     * Runs the next message or job if it is before the completion time.
+     *
+     * @return True if an event was run
+     */
+    private boolean step() {
+        Envelope message = waiting.peek();
+        double job = line.nextJobTime();
+        if(message!=null && message.time<=job) {
+            if(message.time>completionTime)
+                return false;
+            waiting.poll();
+            lastTime = message.time;
+            lastKind = message.kind;
+            lastId = message.id;
+            line.setCurrentTime(message.time);
+            if(message.kind==ARRIVAL)
+                inbound.arrive(message.message);
+            else
+                outbound.release(message.message);
+            line.runWakeups();
+            processed.addLast(message);
+        } else {
+            if(job>completionTime)
+                return false;
+            lastTime = job;
+            lastKind = JOB;
+            lastId = 0;
+            line.runNextJob();
+        }
+
+        forward();
+        if(++sinceCheckpoint>=checkpointInterval)
+            checkpoint();
+        return true;
+    }
+
+    /**
+     * Sends on the messages of the last event. While the events before a straggler are run again their messages are
+     * dropped, the same messages were sent the first time and were not cancelled.
+     */
+    private void forward() {
+        boolean coasting = compare(lastTime,lastKind,lastId,coastTime,coastKind,coastId)<0;
+        BoundaryQueue.Message message;
+        while ((message = arrivalOutbox.poll())!=null) {
+            if(!coasting)
+                send(new Envelope(message,ARRIVAL,nextId++,null,this));
+        }
+        while ((message = releaseOutbox.poll())!=null) {
+            if(!coasting)
+                send(new Envelope(message,RELEASE,nextId++,null,this));
+        }
+    }
+
+    private void send(Envelope envelope) {
+        envelope.sentTime = lastTime;
+        envelope.sentKind = lastKind;
+        envelope.sentId = lastId;
+        sent.addLast(envelope);
+        envelope.target.inbox.offer(envelope);
+    }
+
+    /**
+     * Takes every message from the inbox, rolling back for stragglers and for anti-messages of messages already run. A
+     * message that lands among events being run again after a rollback also rolls back, as those events would no longer
+     * send the same messages as the first time.
+     */
+    private void receive() {
+        Envelope envelope;
+        while ((envelope = inbox.poll())!=null) {
+            Envelope positive = envelope.positive==null ? envelope : envelope.positive;
+            if(compare(positive.time,positive.kind,positive.id,lastTime,lastKind,lastId)<=0
+                    || compare(positive.time,positive.kind,positive.id,coastTime,coastKind,coastId)<0)
+                rollback(positive.time,positive.kind,positive.id);
+
+            if(envelope.positive==null)
+                waiting.add(envelope);
+            else
+                waiting.remove(positive);
+        }
+    }
+
+    /**
+     * Undoes every event that orders at or after the given position.
+     */
+    private void rollback(double time, int kind, long id) {
+        Checkpoint checkpoint = checkpoints.peekLast();
+        while (compare(checkpoint.time,checkpoint.kind,checkpoint.id,time,kind,id)>=0) {
+            checkpoints.pollLast();
+            checkpoint = checkpoints.peekLast();
+        }
+        line.restore(checkpoint.line);
+        if(outbound!=null)
+            outbound.restoreUpstream(checkpoint.upstream);
+
+        //the messages run since the checkpoint will be run again
+        while (!processed.isEmpty()) {
+            Envelope last = processed.peekLast();
+            if(compare(last.time,last.kind,last.id,checkpoint.time,checkpoint.kind,checkpoint.id)<=0)
+                break;
+            waiting.add(processed.pollLast());
+        }
+
+        //the messages sent from the straggler on may not be sent again
+        while (!sent.isEmpty()) {
+            Envelope last = sent.peekLast();
+            if(compare(last.sentTime,last.sentKind,last.sentId,time,kind,id)<0)
+                break;
+            sent.pollLast();
+            last.target.inbox.offer(new Envelope(last.message,last.kind,last.id,last,this));
+        }
+
+        lastTime = checkpoint.time;
+        lastKind = checkpoint.kind;
+        lastId = checkpoint.id;
+        coastTime = time;
+        coastKind = kind;
+        coastId = id;
+        sinceCheckpoint = 0;
+        rollbacks++;
+    }
+
+    private void checkpoint() {
+        checkpoints.addLast(new Checkpoint(lastTime,lastKind,lastId,line.save(),outbound==null ? null : outbound.saveUpstream()));
+        sinceCheckpoint = 0;
+    }
+
+    /**
+     * Throws away the checkpoints and messages from before the global virtual time, keeping the last checkpoint before
+     * it to roll back to.
+     */
+    private void collectFossils() {
+        double time = globalTime;
+        while (checkpoints.size()>1) {
+            Checkpoint first = checkpoints.pollFirst();
+            if(!(checkpoints.peekFirst().time<time)) {
+                checkpoints.addFirst(first);
+                break;
+            }
+        }
+
+        Checkpoint oldest = checkpoints.peekFirst();
+        while (!processed.isEmpty()) {
+            Envelope first = processed.peekFirst();
+            if(compare(first.time,first.kind,first.id,oldest.time,oldest.kind,oldest.id)>0)
+                break;
+            processed.pollFirst();
+        }
+        while (!sent.isEmpty() && sent.peekFirst().sentTime<time)
+            sent.pollFirst();
+    }
+
+    /**
+     * Precondition: Every segment is between batches, see {@link ParallelLine}
+     *
+     * @return The earliest time of an event this segment has still to run, including messages in its inbox
+     */
+    double getLocalTime() {
+        double time = line.nextJobTime();
+        Envelope next = waiting.peek();
+        if(next!=null)
+            time = Math.min(time,next.time);
+        for(Envelope envelope : inbox)
+            time = Math.min(time,envelope.time);
+        return time;
+    }
+
+    /**
+     * @param time The new global virtual time, no segment will ever roll back before it
+     */
+    void setGlobalTime(double time) {
+        globalTime = time;
+    }
+
+    /**
+     * Stops the segment once the global virtual time has passed the completion time.
+     */
+    void stop() {
+        done = true;
+    }
+
+    /**
+     * Precondition: The segment has stopped
+     *
+     * @return The amount of times the segment rolled back
+     */
+    long getRollbacks() {
+        return rollbacks;
+    }
+
+    private static int compare(double time, int kind, long id, double otherTime, int otherKind, long otherId) {
+        int compare = Double.compare(time,otherTime);
+        if(compare!=0)
+            return compare;
+        compare = Integer.compare(kind,otherKind);
+        return compare!=0 ? compare : Long.compare(id,otherId);
+    }
+
+    /**
+     * A message between segments. An anti-message has the message it cancels as its positive.
+     */
+    private static class Envelope implements Comparable<Envelope> {
+
+        final BoundaryQueue.Message message;
+        final double time;
+        final int kind;
+        final long id;
+        final Envelope positive;
+        final OptimisticSegment target;
+        //the event that sent the message
+        double sentTime;
+        int sentKind;
+        long sentId;
+
+        Envelope(BoundaryQueue.Message message, int kind, long id, Envelope positive, OptimisticSegment sender) {
+            this.message = message;
+            this.time = message.time;
+            this.kind = kind;
+            this.id = id;
+            this.positive = positive;
+            this.target = kind==ARRIVAL ? sender.after : sender.before;
+        }
+
+        @Override
+        public int compareTo(Envelope o) {
+            return compare(time,kind,id,o.time,o.kind,o.id);
+        }
+    }
+
+    /**
+     * A copy of the segment after an event, along with the order of that event.
+     */
+    private static class Checkpoint {
+
+        final double time;
+        final int kind;
+        final long id;
+        final ProductionLine.State line;
+        final BoundaryQueue.UpstreamState upstream;
+
+        Checkpoint(double time, int kind, long id, ProductionLine.State line, BoundaryQueue.UpstreamState upstream) {
+            this.time = time;
+            this.kind = kind;
+            this.id = id;
+            this.line = line;
+            this.upstream = upstream;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * File: ParallelLine.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Runs one simulation of a production line on several threads. The line is cut at interstage queues
+ * into segments of consecutive stations, each segment is built as its own {@link ProductionLine} with its own event list
+ * and runs on its own thread, and the segments talk only through the {@link BoundaryQueue} where they were cut.
+ *
+ * The segments are kept in step conservatively, no segment ever runs an event that a message it has not received yet
+ * could come before. Every segment publishes a horizon, a time before which it will never run another event:
+ *   - a widget can only arrive from the segment before at least the lookahead after that segment's horizon, where the
+ *     lookahead is the shortest service time of the stages before the boundary
+ *   - a widget sent to the segment after can only be released at or after that segment's horizon, so a segment with
+ *     widgets still waiting to be released cannot run past it
+ * and a segment runs every event before both bounds. As the lookahead is positive the horizons always move forward, so
+ * the segments never deadlock, but a line where some boundary stage can take no time at all, such as the uniform
+ * distribution with N = 2M, cannot be cut there.
+ *
+ * Only lines that are a chain of stations can be cut, where every stage after a queue is one station further along than
+ * the stages before it, and the line is only cut at a queue that is the only one between two stations. Each stage draws
+ * from the same random stream as on a sequential line, but widgets that finish at the same time may be handled in a
+ * different order and a full boundary queue lets the widgets in by their arrival rather than by the wake order, so the
+ * results match a sequential run statistically rather than exactly.
+ *
+ * When the service times leave no lookahead the segments can instead be run optimistically, see {@link OptimisticSegment},
+ * where each segment runs ahead and rolls back when it turns out to have been wrong. Every so often the calling thread
+ * pauses the segments between batches of events and works out the global virtual time, the earliest time that any segment
+ * or message in flight has still to run. Nothing can roll back before it, so it lets the segments throw away old state,
+ * and once it passes the completion time the run is over.
+ */
+public class ParallelLine {
+
+    private static final int SPINS = 1000; //how many times a segment that cannot move spins before it yields its thread
+    private static final long GVT_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1); //how often the global virtual time is worked out
+
+    private final Topology topology;
+    private final int[] segmentOfStage;
+    private final ProductionLine[] lines;
+    private final Segment[] segments; //null when the line is optimistic
+    private final OptimisticSegment[] optimistic; //null when the line is conservative
+    private final ReadWriteLock gvtLock;
+    private final double completionTime;
+    private ProductionLine merged;
+    private volatile Throwable failure;
+
+    /**
+     * Builds the segments of a line.
+     *
+     * @param options How to build the line
+     * @param stream The stream the random streams of the stages are split from. This is not changed.
+     * @param segmentCount The amount of segments to cut the line into
+     * @throws IllegalArgumentException if the line cannot be cut into that many segments
+     */
+    public ParallelLine(LineOptions options, RandomStream stream, int segmentCount) {
+        this(options,stream,segmentCount,options.isOptimistic());
+    }
+
+    /**
+     * Builds the segments of a line.
+     *
+     * @param options How to build the line
+     * @param stream The stream the random streams of the stages are split from. This is not changed.
+     * @param segmentCount The amount of segments to cut the line into
+     * @param optimistic True to run the segments with Time Warp, false to keep them in step conservatively
+     * @throws IllegalArgumentException if the line cannot be cut into that many segments
+     */
+    public ParallelLine(LineOptions options, RandomStream stream, int segmentCount, boolean optimistic) {
+        //the detector watches every queue at once, which no single segment can see
+        if(options.isWarmupDetected())
+            throw new IllegalArgumentException("The warm-up of a line split into segments cannot be detected, give its time instead");
+        if(options.isSequential())
+            throw new IllegalArgumentException("A line split into segments cannot stop early, it runs until the completion time");
+        this.topology = options.getTopology();
+        this.segmentOfStage = partition(topology,segmentCount);
+        this.lines = new ProductionLine[segmentCount];
+        for(int i=0;i<segmentCount;i++) {
+            lines[i] = options.createEmpty(stream);
+            if(i>0)
+                lines[i].shareStreams(lines[0]);
+        }
+        topology.build(lines,segmentOfStage,options.getM(),options.getN(),options.getQMax(),options.getDistribution());
+
+        this.completionTime = options.getCompletionTime();
+        this.gvtLock = new ReentrantReadWriteLock();
+        this.segments = optimistic ? null : new Segment[segmentCount];
+        this.optimistic = optimistic ? new OptimisticSegment[segmentCount] : null;
+        for(int i=0;i<segmentCount;i++) {
+            if(optimistic)
+                this.optimistic[i] = new OptimisticSegment(this,lines[i],completionTime,gvtLock.readLock());
+            else
+                segments[i] = new Segment(lines[i],completionTime);
+        }
+
+        //hook up the queue between each pair of segments
+        int[] localStages = localIds(segmentOfStage);
+        int[] segmentOfQueue = new int[topology.getQueueCount()];
+        for(int queue=0;queue<segmentOfQueue.length;queue++)
+            segmentOfQueue[queue] = segmentOfStage[topology.getConsumers(queue)[0]];
+        int[] localQueues = localIds(segmentOfQueue);
+        for(int queue=0;queue<segmentOfQueue.length;queue++) {
+            int[] producers = topology.getProducers(queue);
+            int before = segmentOfStage[producers[0]];
+            int after = segmentOfQueue[queue];
+            if(before==after)
+                continue;
+
+            BoundaryQueue boundary = (BoundaryQueue) lines[after].getQueue(localQueues[queue]);
+            if(optimistic) {
+                //messages go through the segments so they can be cancelled
+                boundary.setChannels(this.optimistic[before].arrivalOutbox,this.optimistic[after].releaseOutbox);
+                this.optimistic[after].inbound = boundary;
+                this.optimistic[after].before = this.optimistic[before];
+                this.optimistic[before].outbound = boundary;
+                this.optimistic[before].after = this.optimistic[after];
+                continue;
+            }
+
+            double lookahead = Double.POSITIVE_INFINITY;
+            for(int stage : producers)
+                lookahead = Math.min(lookahead,lines[before].getStage(localStages[stage]).getServiceTime().getMinimum());
+            if(!(lookahead>0))
+                throw new IllegalArgumentException("The line cannot be cut at queue "+topology.getQueueName(queue)
+                        +" as the stages before it can take no time");
+
+            segments[after].inbound = boundary;
+            segments[after].before = segments[before];
+            segments[after].lookahead = lookahead;
+            segments[before].outbound = boundary;
+            segments[before].after = segments[after];
+        }
+    }
+
+    /**
+     * Runs every segment on its own thread until the completion time and merges their statistics.
+     *
+     * //Precondition: The simulation has not already been run
+     */
+    public void run() {
+        Thread[] threads = new Thread[lines.length];
+        if(optimistic!=null) {
+            for(OptimisticSegment segment : optimistic)
+                segment.start();
+        }
+        for(int i=0;i<threads.length;i++) {
+            threads[i] = new Thread(optimistic!=null ? optimistic[i] : segments[i],"segment-"+i);
+            threads[i].start();
+        }
+        if(optimistic!=null)
+            coordinate();
+
+        for(Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the segments",e);
+            }
+        }
+
+        Throwable failed = failure;
+        if(failed instanceof RuntimeException)
+            throw (RuntimeException) failed;
+        if(failed!=null)
+            throw new IllegalStateException("A segment failed",failed);
+        merged = merge();
+    }
+
+    /**
+     * Works out the global virtual time every so often until it passes the completion time, then stops the segments.
+     * Coming back to earlier events after a rollback can make the earliest time of a segment go back, but never before
+     * the straggler, so the global virtual time is never moved back.
+     */
+    private void coordinate() {
+        double globalTime = Double.NEGATIVE_INFINITY;
+        while (globalTime<=completionTime && !hasFailed()) {
+            LockSupport.parkNanos(GVT_INTERVAL);
+            gvtLock.writeLock().lock();
+            try {
+                double time = Double.POSITIVE_INFINITY;
+                for(OptimisticSegment segment : optimistic)
+                    time = Math.min(time,segment.getLocalTime());
+                globalTime = Math.max(globalTime,time);
+                for(OptimisticSegment segment : optimistic)
+                    segment.setGlobalTime(globalTime);
+            } finally {
+                gvtLock.writeLock().unlock();
+            }
+        }
+        for(OptimisticSegment segment : optimistic)
+            segment.stop();
+    }
+
+    /**
+     * Records that a segment failed, which stops every segment.
+     *
+     * @param e The reason the segment failed
+     */
+    void fail(Throwable e) {
+        if(failure==null)
+            failure = e;
+    }
+
+    boolean hasFailed() {
+        return failure!=null;
+    }
+
+    /**
+     * Precondition: The simulation has been run with optimistic segments using {@link #run()}
+     *
+     * @return The amount of times any segment rolled back
+     */
+    public long getRollbacks() {
+        long count = 0;
+        if(optimistic!=null) {
+            for(OptimisticSegment segment : optimistic)
+                count += segment.getRollbacks();
+        }
+        return count;
+    }
+
+    /**
+     * Precondition: The simulation has been run using {@link #run()}
+     *
+     * @return A line holding every stage and queue of every segment in the order of the topology, with the routes and
+     *         finished widgets of the segments joined into one warehouse, so it can be printed like a sequential line
+     */
+    public ProductionLine getLine() {
+        if(merged==null)
+            throw new IllegalStateException("The line has not been run");
+        return merged;
+    }
+
+    /**
+     * @return The amount of jobs run by every segment together
+     */
+    public long getEventCount() {
+        long count = 0;
+        for(ProductionLine line : lines)
+            count += line.getEventCount();
+        return count;
+    }
+
+    /**
+     * Joins the segments back into one line. Routes of each segment that start with a link are resolved against the
+     * routes of the segment before, which were resolved first, so every route of every segment is mapped in one pass.
+     *
+     * @return The merged line
+     */
+    private ProductionLine merge() {
+        ProductionLine line = new ProductionLine(0);
+        line.setCompletionTime(lines[0].getCompletionTime());
+        line.setWarmupTime(lines[0].getWarmupTime());
+        line.setWaitQuantiles(lines[0].getWaitQuantiles()); //the queues of the segments estimate them themselves
+
+        int[] localStages = localIds(segmentOfStage);
+        int[][] globalStages = new int[lines.length][topology.getStageCount()];
+        for(int stage=0;stage<topology.getStageCount();stage++) {
+            line.addStage(lines[segmentOfStage[stage]].getStage(localStages[stage]));
+            globalStages[segmentOfStage[stage]][localStages[stage]] = stage;
+        }
+        int[] segmentOfQueue = new int[topology.getQueueCount()];
+        for(int queue=0;queue<segmentOfQueue.length;queue++)
+            segmentOfQueue[queue] = segmentOfStage[topology.getConsumers(queue)[0]];
+        int[] localQueues = localIds(segmentOfQueue);
+        for(int queue=0;queue<segmentOfQueue.length;queue++)
+            line.addQueue(lines[segmentOfQueue[queue]].getQueue(localQueues[queue]));
+
+        line.getWarehouse().resetStatistics(lines[0].getWarmupTime()); //so its batches start with those of the segments
+        RouteTable routes = line.getRoutes();
+        int[][] mapped = new int[lines.length][];
+        for(int segment=0;segment<lines.length;segment++) {
+            RouteTable table = lines[segment].getRoutes();
+            mapped[segment] = new int[table.size()];
+            //a route always has a larger id than its parent so the parent is mapped first
+            for(int route=1;route<table.size();route++) {
+                int stage = table.getLastStage(route);
+                if(stage<0)
+                    mapped[segment][route] = mapped[segment-1][table.getLinkedRoute(route)];
+                else
+                    mapped[segment][route] = routes.extend(mapped[segment][table.getParent(route)],globalStages[segment][stage]);
+            }
+
+            Warehouse warehouse = lines[segment].getWarehouse();
+            line.getWarehouse().mergeBatchMeans(warehouse);
+            line.getWarehouse().mergeLeadTimes(warehouse);
+            for(int route=0;route<table.size();route++) {
+                long count = warehouse.getWidgets(route);
+                if(count>0)
+                    line.getWarehouse().store(mapped[segment][route],count);
+            }
+            line.addEventCount(lines[segment].getEventCount());
+        }
+        return line;
+    }
+
+    /**
+     * Cuts a chain of stations into segments with about the same amount of stages each. The station of a create stage is
+     * 0 and the station of any other stage is one more than that of the stages before its queue.
+     *
+     * @param topology The layout of the line
+     * @param segmentCount The amount of segments
+     * @return The segment of each stage
+     * @throws IllegalArgumentException if the line is not a chain or has too few places to cut it
+     */
+    private static int[] partition(Topology topology, int segmentCount) {
+        int stageCount = topology.getStageCount();
+        int[] stations = new int[stageCount];
+        Arrays.fill(stations,-1);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for(int stage=0;stage<stageCount;stage++) {
+                if(stations[stage]>=0)
+                    continue;
+                int queue = topology.getPrev(stage);
+                int before = queue==Topology.NONE ? -1 : stations[topology.getProducers(queue)[0]];
+                if(queue==Topology.NONE || before>=0) {
+                    stations[stage] = before+1;
+                    changed = true;
+                }
+            }
+        }
+
+        int last = 0;
+        for(int station : stations) {
+            if(station<0)
+                throw new IllegalArgumentException("A line with a loop cannot be cut into segments");
+            last = Math.max(last,station);
+        }
+
+        //the queues leaving each station, a station with more than one cannot be cut after
+        int[] stagesAt = new int[last+1];
+        int[] queuesAfter = new int[last+1];
+        for(int stage=0;stage<stageCount;stage++)
+            stagesAt[stations[stage]]++;
+        for(int queue=0;queue<topology.getQueueCount();queue++) {
+            int[] producers = topology.getProducers(queue);
+            for(int stage : producers) {
+                if(stations[stage]!=stations[producers[0]])
+                    throw new IllegalArgumentException("The stages before queue "+topology.getQueueName(queue)
+                            +" are at different stations so the line cannot be cut into segments");
+            }
+            queuesAfter[stations[producers[0]]]++;
+        }
+
+        //cut once the segment has its share of the stages
+        int[] segmentOfStation = new int[last+1];
+        int segment = 0;
+        int counted = 0;
+        for(int station=0;station<=last;station++) {
+            segmentOfStation[station] = segment;
+            counted += stagesAt[station];
+            if(segment<segmentCount-1 && queuesAfter[station]==1 && counted*(long) segmentCount>=(segment+1)*(long) stageCount)
+                segment++;
+        }
+        if(segment<segmentCount-1)
+            throw new IllegalArgumentException("The line cannot be cut into "+segmentCount+" segments");
+
+        int[] segments = new int[stageCount];
+        for(int stage=0;stage<stageCount;stage++)
+            segments[stage] = segmentOfStation[stations[stage]];
+        return segments;
+    }
+
+    /**
+     * @param segments The segment of each stage or queue in the order of the topology
+     * @return The id of each stage or queue within its segment
+     */
+    private static int[] localIds(int[] segments) {
+        int[] counts = new int[segments.length];
+        int[] ids = new int[segments.length];
+        for(int i=0;i<segments.length;i++)
+            ids[i] = counts[segments[i]]++;
+        return ids;
+    }
+
+    /**
+     * One segment of the line and the thread that runs it. Messages are taken from the boundary queues into local queues
+     * ordered by time, and at the same time a release is handled before an arrival and an arrival before a job.
+     */
+    private class Segment implements Runnable {
+
+        private final ProductionLine line;
+        private final double completionTime;
+        private BoundaryQueue inbound; //null for the first segment
+        private BoundaryQueue outbound; //null for the last segment
+        private Segment before;
+        private Segment after;
+        private double lookahead;
+
+        private final PriorityQueue<BoundaryQueue.Message> arrivals;
+        private final Queue<BoundaryQueue.Message> releases; //sent in order of time, so they need no sorting
+        private volatile double horizon; //no event before this will be run by this segment
+
+        Segment(ProductionLine line, double completionTime) {
+            this.line = line;
+            this.completionTime = completionTime;
+            this.arrivals = new PriorityQueue<>();
+            this.releases = new ArrayDeque<>();
+        }
+
+        @Override
+        public void run() {
+            try {
+                simulate();
+            } catch (Throwable e) {
+                fail(e);
+            } finally {
+                horizon = Double.POSITIVE_INFINITY; //never hold up the neighbours, even after a failure
+            }
+        }
+
+        private void simulate() {
+            line.start();
+            int idle = 0;
+            while (!hasFailed()) {
+                //read the horizons before taking the messages, every message sent before a horizon was published is seen
+                double inBound = before==null ? Double.POSITIVE_INFINITY : before.horizon + lookahead;
+                double afterHorizon = after==null ? Double.POSITIVE_INFINITY : after.horizon;
+                drain();
+
+                boolean progressed = false;
+                double next;
+                double outBound;
+                while (true) {
+                    outBound = outbound!=null && outbound.getPendingCount()>0 ? afterHorizon : Double.POSITIVE_INFINITY;
+                    next = nextTime();
+                    if(next>completionTime || next>=inBound || next>=outBound)
+                        break;
+                    step();
+                    progressed = true;
+                }
+
+                double bound = Math.min(next,Math.min(inBound,outBound));
+                if(bound>completionTime) {
+                    //nothing is left to run before the end
+                    break;
+                }
+                if(bound>horizon)
+                    horizon = bound;
+
+                if(progressed) {
+                    idle = 0;
+                } else if(++idle<SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            line.finish();
+        }
+
+        private void drain() {
+            BoundaryQueue.Message message;
+            if(inbound!=null) {
+                while ((message = inbound.takeArrival())!=null)
+                    arrivals.add(message);
+            }
+            if(outbound!=null) {
+                while ((message = outbound.takeRelease())!=null)
+                    releases.add(message);
+            }
+        }
+
+        /**
+         * @return The time of the next release, arrival or job, or infinity if there is none
+         */
+        private double nextTime() {
+            double time = line.nextJobTime();
+            BoundaryQueue.Message release = releases.peek();
+            if(release!=null && release.time<time)
+                time = release.time;
+            BoundaryQueue.Message arrival = arrivals.peek();
+            if(arrival!=null && arrival.time<time)
+                time = arrival.time;
+            return time;
+        }
+
+        /**
+         * Runs the next release, arrival or job.
+         */
+        private void step() {
+            double job = line.nextJobTime();
+            BoundaryQueue.Message release = releases.peek();
+            BoundaryQueue.Message arrival = arrivals.peek();
+            if(release!=null && release.time<=job && (arrival==null || release.time<=arrival.time)) {
+                releases.poll();
+                line.setCurrentTime(release.time);
+                outbound.release(release);
+                line.runWakeups();
+            } else if(arrival!=null && arrival.time<=job) {
+                arrivals.poll();
+                line.setCurrentTime(arrival.time);
+                inbound.arrive(arrival);
+                line.runWakeups();
+            } else {
+                line.runNextJob();
+            }
+        }
+    }
+}
@@ -22,23 +22,36 @@ public class ProcessingStage extends Stage {
         super(line,prev, next, m, n, name);
     }
 
+    /**
+     * Creates a new processing stage.
+     *
+     * @param line The production line which this stage is apart of
+     * @param prev The previous queue in the production line.
+     * @param next The next queue in the production line.
+     * @param serviceTime The distribution of the processing time
+     * @param name The name of the stage. This should be in the form of S[ordinal]<parallel> for example s0a, s1, s3b
+     */
+    public ProcessingStage(ProductionLine line, InterStageQueue prev, InterStageQueue next, ServiceTime serviceTime, String name) {
+        super(line,prev,next,serviceTime,name);
+    }
+
     /**
      * Moves the current widget to the next queue.
      *
-     * @param widget The widget to push
+     * @param widget The handle of the widget to push
      */
     @Override
-    protected void pushWidget(Widget widget) {
+    protected void pushWidget(int widget) {
         getNext().offer(widget);
     }
 
     /**
      * Takes a widget from the previous queue.
      *
-     * @return The widget from the previous queue.
+     * @return The handle of the widget from the previous queue.
      */
     @Override
-    protected Widget pullWidget() {
+    protected int pullWidget() {
         return getPrev().poll();
     }
 }
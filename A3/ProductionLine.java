@@ -1,4 +1,4 @@
-import java.util.*;
+import java.util.Arrays;
 
 /**
  * File: ProductionLine.java
@@ -11,32 +11,103 @@ import java.util.*;
  */
 public class ProductionLine {
 
-    //create the production line. This is initialised in #buildProductionLine
-    private Stage s0A;
-    private Stage s0B;
-    private Stage s1;
-    private Stage s2;
-    private Stage s3A;
-    private Stage s3B;
-    private Stage s4;
-    private Stage s5A;
-    private Stage s5B;
-    private Stage s6;
-
-    //List of queues is for STATISTICS ONLY
+    //every stage indexed by its id, events refer to stages by id
+    private Stage[] stages;
+    private int stageCount;
+
+    //every queue indexed by its id
     private InterStageQueue[] interStageQueues;
+    private int queueCount;
     private final Warehouse warehouse;
+    private final RouteTable routes;
+    private WidgetTable widgets; //every widget on the line, the stages and queues hold handles into it
+    private IdGenerator ids;
 
     //items dealing with the simulation
     private double currentTime;
-    private final double completionTime;
-    private final PriorityQueue<Job> jobs;
+    private double completionTime;
+    private EventList jobs;
+    private long eventCount; //amount of jobs run, for benchmarking
+
+    //stages to wake up because a queue beside them changed, a ring of stage ids. A stage is never in the ring twice
+    //so the ring never needs more room than there are stages
+    private int[] wakeups;
+    private boolean[] waking; //whether each stage is already in the ring
+    private int wakeupHead;
+    private int wakeupCount;
+    private int wakeOrder; //the order queues wake the stages waiting on them, see WaiterList
+    private int batchSize; //the amount of processing times each stage draws at once, 0 to draw them one at a time
+    private double[] waitQuantiles; //the quantiles of the time widgets wait that each queue estimates, from 0 to 1
+
+    //the next unused substream, each stage takes one and then this jumps past it
+    private RandomStream streams;
+
+    //warm-up deletion, the statistics are reset once the line is taken to have warmed up
+    private double warmupTime; //when the statistics started, 0 unless the warm-up was deleted
+    private double warmupAt; //the given time to reset the statistics at, infinity if there is none
+    private WarmupDetector detector; //null unless the warm-up is detected rather than given
+    private double lastWidgetTime; //the widgets in every queue integrated over time, up to the last observation
+    private StoppingRule stopping; //null unless the run stops once its statistics are precise enough
+
+    //the detector and stopping rule observe the line every interval
+    private double observationInterval;
+    private double nextTick; //infinity if nothing observes the line
+    private double nextObservation; //the earlier of the next tick and the given warm-up
 
+    /**
+     * Creates a new production line whose stages are seeded from the current time.
+     */
     public ProductionLine() {
-        this.warehouse = new Warehouse();
-        this.jobs = new PriorityQueue<>();
+        this(System.nanoTime());
+    }
+
+    /**
+     * Creates a new production line. Two lines created with the same seed and built with the same parameters will
+     * produce exactly the same simulation.
+     *
+     * @param seed The seed from which the random streams of every stage are derived.
+     */
+    public ProductionLine(long seed) {
+        this(seed,new HeapEventList());
+    }
+
+    /**
+     * Creates a new production line.
+     *
+     * @param seed The seed from which the random streams of every stage are derived.
+     * @param jobs The future event list that the simulation schedules jobs in. This must be empty.
+     */
+    public ProductionLine(long seed, EventList jobs) {
+        this(new RandomStream(seed),jobs);
+    }
+
+    /**
+     * Creates a new production line whose stages take consecutive substreams of the given stream. The stream itself is
+     * not changed so the same stream can be given to several lines.
+     *
+     * @param stream The stream from which the random streams of every stage are split.
+     * @param jobs The future event list that the simulation schedules jobs in. This must be empty.
+     */
+    public ProductionLine(RandomStream stream, EventList jobs) {
+        this.routes = new RouteTable();
+        this.warehouse = new Warehouse(routes);
+        this.widgets = new WidgetTable();
+        this.ids = new IdGenerator();
+        this.jobs = jobs;
+        this.stages = new Stage[16];
+        this.stageCount = 0;
+        this.wakeups = new int[16];
+        this.waking = new boolean[16];
+        this.wakeOrder = WaiterList.ID;
+        this.waitQuantiles = new double[0];
+        this.interStageQueues = new InterStageQueue[16];
+        this.queueCount = 0;
         this.completionTime = 10000000;
         this.currentTime = 0;
+        this.streams = stream.copy();
+        this.warmupAt = Double.POSITIVE_INFINITY;
+        this.nextTick = Double.POSITIVE_INFINITY;
+        this.nextObservation = Double.POSITIVE_INFINITY;
     }
 
     /**
@@ -47,73 +118,257 @@ public class ProductionLine {
      * @param qMax The maximum capacity of the queues. This must not be negative
      */
     public void buildProductionLine(int M, int N, int qMax) {
+        buildProductionLine(Topology.assignment(),M,N,qMax);
+    }
+
+    /**
+     * Builds the production line described by a topology. The ids of the stages and queues of this line match their ids
+     * in the topology.
+     *
+     * @param topology The layout of the line
+     * @param M The average production time
+     * @param N The range of production times
+     * @param qMax The maximum capacity of the queues. This must not be negative
+     */
+    public void buildProductionLine(Topology topology, int M, int N, int qMax) {
+        topology.build(this,M,N,qMax);
+    }
 
-        if(qMax<0)
-            throw new IllegalArgumentException("The queue cannot have a negative capacity");
-        //create the interstage queue, then specify the links
-        //stage 0
-        InterStageQueue Q01 = new InterStageQueue(this,"Q01",qMax);
-        s0A = new CreationalStage(this,Q01,2*M,2*N,"S0a");
-        s0B = new CreationalStage(this,Q01,M,N,"S0b");
-        //stage 1
-        InterStageQueue Q12 = new InterStageQueue(this,"Q12",qMax);
-        s1 = new ProcessingStage(this,Q01,Q12,M,N,"S1");
-        //stage 2
-        InterStageQueue Q23 = new InterStageQueue(this,"Q23",qMax);
-        s2 = new ProcessingStage(this,Q12,Q23,M,N,"S2");
-        //stage 3
-        InterStageQueue Q34 = new InterStageQueue(this,"Q34",qMax);
-        s3A = new ProcessingStage(this,Q23,Q34,2*M,2*N,"S3a");
-        s3B = new ProcessingStage(this,Q23,Q34,2*M,2*N,"S3b");
-        //stage 4
-        InterStageQueue Q45 = new InterStageQueue(this,"Q45",qMax);
-        s4 = new ProcessingStage(this,Q34,Q45,M,N,"S4");
-        //stage 5
-        InterStageQueue Q56 = new InterStageQueue(this,"Q56",qMax);
-        s5A = new ProcessingStage(this,Q45,Q56,2*M,2*N,"S5a");
-        s5B = new ProcessingStage(this,Q45,Q56,2*M,2*N,"S5b");
-        s6 = new FinalStage(this,warehouse,Q56,M,N,"S6");
-        //list of queues is FOR STATISTICS ONLY
-        interStageQueues = new InterStageQueue[]{Q01, Q12, Q23, Q34, Q45, Q56};
+    /**
+     * Builds the production line described by a topology, with a different distribution of processing times.
+     *
+     * @param topology The layout of the line
+     * @param M The average production time
+     * @param N The range of production times
+     * @param qMax The maximum capacity of the queues. This must not be negative
+     * @param distribution The distribution of every stage that the topology does not give one, see {@link ServiceTime}
+     */
+    public void buildProductionLine(Topology topology, int M, int N, int qMax, String distribution) {
+        topology.build(this,M,N,qMax,distribution);
     }
 
     /**
      * Starts and runs the discrete event simulation to its entirety. This works by starting the initial stages. Each stage adds
-     * jobs to the queue using {@link #addJob(Job)}. The next job that needs to be complete is done. More jobs should then be added
+     * jobs to the queue using {@link #addJob(double, int)}. The next job that needs to be complete is done. More jobs should then be added
      * to the queue at the completion of this job.
      *
+     * Stages never call each other directly. When a queue changes it asks the line to {@link #wake(Stage)} the blocked or starved
+     * stages beside it and those are run after the job, one at a time, until no stage is left to wake. A chain of stages unblocking
+     * each other therefore runs in a loop rather than recursing through the whole line.
+     *
      * //Precondition: The production line is initialised using {@link #buildProductionLine(int, int, int)}
      *                 The simulation is not running and has not already started
      */
     public void run() {
-
-        //start the creation stages
-        s0A.pull();
-        s0B.pull();
+        start();
 
         while (currentTime < completionTime) {
 
             if(jobs.isEmpty())
                 throw new IllegalStateException("Production Line Seized. No jobs added");
 
-            //get the next job
-            Job job = jobs.poll();
-            if(job.getCompletionTime()>completionTime)
+            //get the next job, observing the line first as it may decide to stop
+            double time = jobs.firstTime();
+            if(time>nextObservation)
+                observe(time);
+            if(time>completionTime)
                 break;
 
-            //set the current time nad run the job
-            currentTime = job.getCompletionTime();
-            job.run();
+            runNextJob();
+        }
+        finish();
+    }
 
-            //get statistics from the queues
-            for(InterStageQueue queue : interStageQueues) {
-                queue.gatherStats();
-            }
+    /**
+     * Starts the creation stages, every other stage starts out starved and waits on the queue before it.
+     */
+    void start() {
+        for(int stage=0;stage<stageCount;stage++) {
+            stages[stage].pull();
         }
-        //simulation is over
+        runWakeups();
+    }
+
+    /**
+     * @return When the next job completes, or infinity if there are no jobs
+     */
+    double nextJobTime() {
+        return jobs.isEmpty() ? Double.POSITIVE_INFINITY : jobs.firstTime();
+    }
+
+    /**
+     * Moves the clock to the next job, runs it and wakes every stage that it affected.
+     */
+    void runNextJob() {
+        double time = jobs.firstTime();
+        if(time>nextObservation)
+            observe(time);
+        currentTime = time;
+        stages[jobs.poll()].push();
+        runWakeups();
+        eventCount++;
+    }
+
+    /**
+     * Moves the clock forward without running a job, used by {@link ParallelLine} to deliver messages from another
+     * segment of the line at the time they were sent for.
+     *
+     * @param time The new time. This must not be before the current time.
+     */
+    void setCurrentTime(double time) {
+        if(time>nextObservation)
+            observe(time);
+        currentTime = time;
+    }
+
+    /**
+     * Ends the simulation, so the statistics include the time from the last job up to the completion time.
+     */
+    void finish() {
+        if(completionTime>nextObservation)
+            observe(completionTime);
         currentTime = completionTime;
     }
 
+    /**
+     * Deletes the warm-up of the run by resetting every statistic at the given time, so the statistics only cover the
+     * time from then until the completion time.
+     *
+     * @param time When the line is taken to have warmed up. This must be before the completion time.
+     * @throws IllegalArgumentException if the time is not before the completion time
+     */
+    public void setWarmup(double time) {
+        if(!(time>=0) || time>=completionTime)
+            throw new IllegalArgumentException("The warm-up must be at least 0 and before the completion time");
+        this.detector = null;
+        this.warmupAt = time>0 ? time : Double.POSITIVE_INFINITY;
+        this.nextObservation = Math.min(warmupAt,nextTick);
+    }
+
+    /**
+     * Detects the warm-up of the run with MSER-5, see {@link WarmupDetector}, and resets every statistic once it
+     * decides the transient is over. The detector observes the average amount of widgets in all of the queues over each
+     * ten thousandth of the run, which climbs while the line fills up. If the run ends before the detector decides the
+     * statistics cover the whole run.
+     */
+    public void detectWarmup() {
+        this.detector = new WarmupDetector();
+        this.warmupAt = Double.POSITIVE_INFINITY;
+        startObserving();
+    }
+
+    /**
+     * Stops the run as soon as the statistics chosen by the rule are precise enough, or at the completion time if they
+     * never are. The rule observes the line every ten thousandth of the completion time after the warm-up.
+     *
+     * @param stopping The rule that decides when to stop
+     */
+    public void setStoppingRule(StoppingRule stopping) {
+        this.stopping = stopping;
+        startObserving();
+    }
+
+    private void startObserving() {
+        this.observationInterval = completionTime/10000;
+        this.nextTick = observationInterval;
+        this.nextObservation = Math.min(warmupAt,nextTick);
+    }
+
+    /**
+     * Takes every observation before the given time. Nothing changes between jobs, so the line is observed exactly as
+     * it was at the time of each observation.
+     *
+     * @param time The time of the next job
+     */
+    private void observe(double time) {
+        while (nextObservation<time) {
+            double observed = nextObservation;
+            if(observed==warmupAt) {
+                warmupAt = Double.POSITIVE_INFINITY;
+                resetStatistics(observed);
+            }
+            if(observed==nextTick) {
+                nextTick += observationInterval;
+                tick(observed);
+            }
+            nextObservation = Math.min(warmupAt,nextTick);
+        }
+    }
+
+    /**
+     * Feeds the detector until the line has warmed up, then the stopping rule.
+     */
+    private void tick(double time) {
+        if(detector!=null && !detector.isDecided()) {
+            double widgetTime = 0;
+            for(int i=0;i<queueCount;i++)
+                widgetTime += interStageQueues[i].getWidgetTime(time);
+            boolean warm = detector.add((widgetTime-lastWidgetTime)/observationInterval);
+            lastWidgetTime = widgetTime;
+            if(warm)
+                resetStatistics(time);
+            if(stopping==null && detector.isDecided())
+                nextTick = Double.POSITIVE_INFINITY; //nothing is left to observe
+            return;
+        }
+        if(stopping==null || warmupAt!=Double.POSITIVE_INFINITY)
+            return;
+
+        double[] totals = new double[3];
+        double[] weights = new double[3];
+        double elapsed = time - warmupTime;
+        totals[StoppingRule.THROUGHPUT] = warehouse.totalInStorage();
+        weights[StoppingRule.THROUGHPUT] = elapsed;
+        for(int i=0;i<stageCount;i++)
+            totals[StoppingRule.STARVATION] += stages[i].getStarvationTime(time);
+        weights[StoppingRule.STARVATION] = elapsed*stageCount;
+        for(int i=0;i<queueCount;i++) {
+            totals[StoppingRule.QUEUE_TIME] += interStageQueues[i].getTotalTimeSpent();
+            weights[StoppingRule.QUEUE_TIME] += interStageQueues[i].getWidgetsLeft();
+        }
+        if(stopping.add(totals,weights)) {
+            //the statistics are precise enough, end the run here
+            completionTime = time;
+            nextTick = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Forgets everything the stages, queues and warehouse have measured so far, so the statistics start from the time.
+     */
+    private void resetStatistics(double time) {
+        warmupTime = time;
+        for(int i=0;i<stageCount;i++)
+            stages[i].resetStatistics(time);
+        for(int i=0;i<queueCount;i++)
+            interStageQueues[i].resetStatistics(time);
+        warehouse.resetStatistics(time);
+    }
+
+    /**
+     * @return When the statistics started, 0 unless the warm-up was deleted
+     */
+    public double getWarmupTime() {
+        return warmupTime;
+    }
+
+    /**
+     * @return The time the statistics cover, from the end of the warm-up until the completion time
+     */
+    public double getMeasuredTime() {
+        return completionTime - warmupTime;
+    }
+
+    /**
+     * Records when the statistics started without resetting anything, used for the line merged from the segments of a
+     * {@link ParallelLine} whose segments each deleted their own warm-up.
+     *
+     * @param time When the statistics of the segments started
+     */
+    void setWarmupTime(double time) {
+        this.warmupTime = time;
+    }
+
     /**
      * Prints all of the statistics according to the assignment specification. This will first print out
      * relevant statistics of the stage, then the queues, then the production line paths.
@@ -122,28 +377,220 @@ public class ProductionLine {
      * The simulation must have been initialised with {@link #buildProductionLine(double, double, int)} and run using {@link #run()}
      */
     public void printStatistics() {
+        printWarmup();
         printStageStats();
         printQueueStats();
         printLineStats();
     }
 
+    /**
+     * Prints the same statistics as {@link #printStatistics()} except each is followed by the half width of its 95%
+     * confidence interval, worked out from the batch means of this run alone, see {@link BatchMeans}. The production
+     * paths have no batch means, so the throughput of the whole line is printed in their place.
+     *
+     * Preconditions:
+     * The simulation must have been initialised with {@link #buildProductionLine(int, int, int)} and run using {@link #run()}
+     */
+    public void printIntervals() {
+        printWarmup();
+        double measured = getMeasuredTime();
+        BatchMeans throughput = warehouse.getBatchMeans();
+        throughput.close(completionTime);
+        System.out.println("Batches: "+throughput.getBatches()+" (value +- 95% confidence half width)");
+
+        System.out.println("Production Statistics -----------------------------");
+        System.out.format("%-15s%-25s%-25s%-25s%n","Stage: ","Work[%]","Starve[t]","Block[t]");
+        for(Stage stage : getStages()) {
+            BatchMeans batches = stage.getBatchMeans();
+            batches.close(completionTime);
+            double work = batches.summarise(0,1,0).getHalfWidth(0.95);
+            double starve = batches.summarise(1,-1,-1).getHalfWidth(0.95);
+            double block = batches.summarise(0,0,1).getHalfWidth(0.95);
+            System.out.format("%-15s%-25s%-25s%-25s%n",stage.getName(),
+                    interval(100.0*stage.getWorkTime()/measured,100*work),
+                    interval(Math.abs(stage.getStarvationTime()),starve*measured),
+                    interval(stage.getBlockedTime(),block*measured));
+        }
+
+        System.out.println("Storage Queues ---------------------------------");
+        System.out.format("%-15s%-25s%-25s%n","Store","AvgTime[t]","AvgWgts");
+        for(InterStageQueue queue : getQueues()) {
+            BatchMeans batches = queue.getBatchMeans();
+            batches.close(completionTime);
+            double time = batches.summariseRatio(InterStageQueue.TIME_SPENT,InterStageQueue.LEFT).getHalfWidth(0.95);
+            double widgets = batches.summarise(0,0,0,1).getHalfWidth(0.95);
+            System.out.format("%-15s%-25s%-25s%n",queue.getName(),interval(queue.getAverageTimeSpent(),time),
+                    interval(queue.getAverageWidgetsInQueue(),widgets));
+        }
+
+        System.out.println("Throughput--------");
+        System.out.format("widgets per unit time: %.6f +- %.6f%n",warehouse.totalInStorage()/measured,
+                throughput.summarise(0,1).getHalfWidth(0.95));
+    }
+
+    private static String interval(double value, double halfWidth) {
+        return String.format("%.2f +- %.2f",value,halfWidth);
+    }
+
+    /**
+     * Prints when the statistics start from if the warm-up is deleted, nothing is printed otherwise.
+     */
+    private void printWarmup() {
+        if(detector!=null && !detector.isDecided())
+            System.out.println("Warm-up: not detected by MSER-5, the statistics cover the whole run");
+        else if(detector!=null)
+            System.out.format("Warm-up: %.2f (reset once MSER-5 decided)%n",warmupTime);
+        else if(warmupTime>0)
+            System.out.format("Warm-up: %.2f%n",warmupTime);
+
+        if(stopping!=null) {
+            System.out.format("Stopped: %.2f%s%n",completionTime,stopping.isPrecise() ? "" : " (the precision was not reached)");
+            stopping.print();
+        }
+    }
+
     /**
      * Prints out production path statistics. This will print
      *   - the widgets that passed through 3a/b to 5a/b
      *   - the widgets that were created in s0a and s0b respectively.
+     * Any other line does not have these stages, so the most common routes and the widgets through each stage are printed instead.
      *
      *   Preconditions:
      *   The simulation must have been initialised with {@link #buildProductionLine(double, double, int)} and run using {@link #run()}
      */
     private void printLineStats() {
+        if(!isAssignmentLine()) {
+            printRouteStats(10);
+            return;
+        }
+
         System.out.println("Production Paths--------");
-        System.out.println("s3a -> s5a: " + warehouse.getThreeAFiveA());
-        System.out.println("s3a -> s5b: " + warehouse.getThreeAFiveB());
-        System.out.println("s3b -> s5a: " + warehouse.getThreeBFiveA());
-        System.out.println("s3b -> s5b: " + warehouse.getThreeBFiveB());
+        System.out.println("s3a -> s5a: " + countThrough("S3a","S5a"));
+        System.out.println("s3a -> s5b: " + countThrough("S3a","S5b"));
+        System.out.println("s3b -> s5a: " + countThrough("S3b","S5a"));
+        System.out.println("s3b -> s5b: " + countThrough("S3b","S5b"));
         System.out.println("Production Widgets--------");
-        System.out.println("s0a: "+warehouse.getTotalA());
-        System.out.println("s0b: "+warehouse.getTotalB());
+        System.out.println("s0a: "+countThrough("S0a"));
+        System.out.println("s0b: "+countThrough("S0b"));
+    }
+
+    /**
+     * @return True if the line has every stage that the assignment path statistics are about.
+     */
+    private boolean isAssignmentLine() {
+        for(String name : new String[]{"S0a","S0b","S3a","S3b","S5a","S5b"}) {
+            if(findStage(name)==null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param names The names of stages on the line
+     * @return The amount of widgets in the warehouse that went through all of the stages.
+     */
+    private long countThrough(String... names) {
+        int[] indices = new int[names.length];
+        for(int i=0;i<names.length;i++)
+            indices[i] = findStageIndex(names[i]);
+        return warehouse.countThrough(indices);
+    }
+
+    /**
+     * @param name The name of a stage
+     * @return The stage with the name, or null if there is no such stage
+     */
+    public Stage findStage(String name) {
+        int stage = findStageIndex(name);
+        return stage<0 ? null : stages[stage];
+    }
+
+    /**
+     * The index of a stage is its id, except on a line merged from the segments of a {@link ParallelLine} where the
+     * stages keep the ids of their own segment.
+     *
+     * @param name The name of a stage
+     * @return The index of the stage in this line, or -1 if there is no such stage
+     */
+    private int findStageIndex(String name) {
+        for(int stage=0;stage<stageCount;stage++) {
+            if(stages[stage].getName().equals(name))
+                return stage;
+        }
+        return -1;
+    }
+
+    /**
+     * Prints out the most common routes through the line and the amount of widgets that went through each stage. Unlike
+     * {@link #printLineStats()} this works for any layout of line.
+     *
+     *   Preconditions:
+     *   The simulation must have been initialised with {@link #buildProductionLine(int, int, int)} and run using {@link #run()}
+     *
+     * @param k The maximum amount of routes to print
+     */
+    public void printRouteStats(int k) {
+        System.out.println("Top Routes--------");
+        for(int route : warehouse.getTopRoutes(k)) {
+            StringBuilder path = new StringBuilder();
+            for(int stage : routes.getStages(route)) {
+                if(path.length()>0)
+                    path.append(" -> ");
+                path.append(stages[stage].getName());
+            }
+            System.out.println(path + ": " + warehouse.getWidgets(route));
+        }
+        System.out.println("Stage Widgets--------");
+        long[] counts = warehouse.getStageCounts(stageCount);
+        for(int stage=0;stage<stageCount;stage++) {
+            System.out.println(stages[stage].getName() + ": " + counts[stage]);
+        }
+    }
+
+    /**
+     * Prints the percentiles of the lead time of the widgets that reached the warehouse, from being created to
+     * finishing, see {@link Warehouse#recordLeadTimes()}.
+     *
+     *   Preconditions:
+     *   The warehouse records lead times and the simulation has been run using {@link #run()}
+     *
+     * @param percentiles The percentiles to print, each from 0 to 100
+     */
+    public void printLeadTimes(double... percentiles) {
+        if(warehouse.getLeadTimes()==null)
+            throw new IllegalStateException("The warehouse did not record lead times");
+        System.out.println("Lead Time--------");
+        warehouse.getLeadTimes().print(percentiles);
+    }
+
+    /**
+     * Prints the estimated quantiles of the time widgets waited in each queue, one column for each quantile, see
+     * {@link #setWaitQuantiles(double...)}. Only widgets that have left a queue are counted.
+     *
+     *   Preconditions:
+     *   The simulation has been run using {@link #run()}
+     */
+    public void printWaitQuantiles() {
+        System.out.println("Queue Wait--------");
+        System.out.format("%-15s","Store");
+        for(double fraction : waitQuantiles)
+            System.out.format("%-15s",percentileName(fraction));
+        System.out.println();
+        for(InterStageQueue queue : getQueues()) {
+            System.out.format("%-15s",queue.getName());
+            for(int i=0;i<waitQuantiles.length;i++)
+                System.out.format("%-15.2f",queue.getWaitQuantile(i));
+            System.out.println();
+        }
+    }
+
+    /**
+     * @param fraction A quantile from 0 to 1
+     * @return The name of the quantile as a percentile, for example p99.9 for 0.999
+     */
+    static String percentileName(double fraction) {
+        double percentile = Math.round(fraction*1e6)/1e4; //so 0.999 is 99.9 rather than 99.89999...
+        return "p" + (percentile==Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile));
     }
 
     /**
@@ -157,7 +604,7 @@ public class ProductionLine {
     private void printQueueStats() {
         System.out.println("Storage Queues ---------------------------------");
         System.out.format("%-15s%-15s%-15s%n","Store","AvgTime[t]","AvgWgts");
-        for(InterStageQueue queue : interStageQueues) {
+        for(InterStageQueue queue : getQueues()) {
             System.out.format("%-15s%-15.2f%-15.2f%n",queue.getName(),queue.getAverageTimeSpent(),queue.getAverageWidgetsInQueue());
         }
     }
@@ -174,12 +621,8 @@ public class ProductionLine {
     private void printStageStats() {
         System.out.println("Production Statistics -----------------------------");
         System.out.format("%-15s%-15s%-15s%-15s%n","Stage: ","Work[%]","Starve[t]","Block[t]");
-        /**
-         * ---------- THE LIST OF STAGES IS TEMPORARY VARIABLE FOR STATISTICS ONLY DON'T REDUCE MARKS!!!! ---------
-         */
-        Stage[] stages = new Stage[]{s0A,s0B,s1,s2,s3A,s3B,s4,s5A,s5B,s6};
-        for(Stage stage : stages) {
-            double workPercentage = 100.0 * stage.getWorkTime()/ completionTime;
+        for(Stage stage : getStages()) {
+            double workPercentage = 100.0 * stage.getWorkTime()/ getMeasuredTime();
             /* Math#abs IS TO FIX IT DISPLAYING -0.00. THE RESULT OF getStarvationTime() is NEVER NEGATIVE YOU CAN DOUBLE CHECK THIS IF YOU DON'T BELIEVE */
             double starvationTime = Math.abs(stage.getStarvationTime());
             System.out.format("%-15s%-15.2f%-15.2f%-15.2f%n",stage.getName(),workPercentage,starvationTime,stage.getBlockedTime());
@@ -187,12 +630,243 @@ public class ProductionLine {
     }
 
     /**
-     * Adds a job to the production line queue.
+     * @return The stages of the production line in the order they should be reported.
+     */
+    private Stage[] getStages() {
+        return Arrays.copyOf(stages,stageCount);
+    }
+
+    /**
+     * @return The queues of the production line in the order they should be reported.
+     */
+    private InterStageQueue[] getQueues() {
+        return Arrays.copyOf(interStageQueues,queueCount);
+    }
+
+    /**
+     * Takes a snapshot of all of the statistics that {@link #printStatistics()} would print so that the results of
+     * several independent runs can be combined.
+     *
+     * Preconditions:
+     * The simulation must have been initialised with {@link #buildProductionLine(int, int, int)} and run using {@link #run()}
+     *
+     * @return The statistics of this run.
+     */
+    public LineStatistics getStatistics() {
+        Stage[] stages = getStages();
+        String[] stageNames = new String[stages.length];
+        double[] work = new double[stages.length];
+        double[] starve = new double[stages.length];
+        double[] block = new double[stages.length];
+        for(int i=0;i<stages.length;i++) {
+            stageNames[i] = stages[i].getName();
+            work[i] = 100.0 * stages[i].getWorkTime()/ getMeasuredTime();
+            starve[i] = Math.abs(stages[i].getStarvationTime());
+            block[i] = stages[i].getBlockedTime();
+        }
+
+        String[] queueNames = new String[queueCount];
+        double[] avgTime = new double[queueCount];
+        double[] avgWidgets = new double[queueCount];
+        for(int i=0;i<queueCount;i++) {
+            queueNames[i] = interStageQueues[i].getName();
+            avgTime[i] = interStageQueues[i].getAverageTimeSpent();
+            avgWidgets[i] = interStageQueues[i].getAverageWidgetsInQueue();
+        }
+
+        String[] pathNames;
+        double[] paths;
+        if(isAssignmentLine()) {
+            pathNames = new String[]{"s3a -> s5a","s3a -> s5b","s3b -> s5a","s3b -> s5b","s0a","s0b"};
+            paths = new double[]{countThrough("S3a","S5a"),countThrough("S3a","S5b"),countThrough("S3b","S5a"),
+                    countThrough("S3b","S5b"),countThrough("S0a"),countThrough("S0b")};
+        } else {
+            //any other line reports the widgets that went through each stage
+            long[] counts = warehouse.getStageCounts(stageCount);
+            pathNames = stageNames;
+            paths = new double[stageCount];
+            for(int i=0;i<stageCount;i++)
+                paths[i] = counts[i];
+        }
+        double[][] waits = null;
+        if(waitQuantiles.length>0) {
+            waits = new double[queueCount][waitQuantiles.length];
+            for(int i=0;i<queueCount;i++) {
+                for(int j=0;j<waitQuantiles.length;j++)
+                    waits[i][j] = interStageQueues[i].getWaitQuantile(j);
+            }
+        }
+
+        Histogram leadTimes = warehouse.getLeadTimes()==null ? null : warehouse.getLeadTimes().copy();
+        return new LineStatistics(stageNames,work,starve,block,queueNames,avgTime,avgWidgets,pathNames,paths,warmupTime,
+                leadTimes,waits);
+    }
+
+    /**
+     * Adds a job to the production line queue. When the job completes the simulation will call {@link Stage#push()} on
+     * the stage.
+     *
+     * @param completionTime When the job completes
+     * @param stage The id of the stage the job is for
+     */
+    public void addJob(double completionTime, int stage) {
+        this.jobs.add(completionTime,stage);
+    }
+
+    /**
+     * Marks a stage to be woken up once the current job has finished. A stage that is already waiting to be woken is
+     * not added again.
+     *
+     * @param stage A stage which is blocked or starved beside a queue that has just changed
+     */
+    public void wake(Stage stage) {
+        int id = stage.getId();
+        if(waking[id])
+            return;
+        waking[id] = true;
+        int tail = wakeupHead + wakeupCount;
+        if(tail>=wakeups.length)
+            tail -= wakeups.length;
+        wakeups[tail] = id;
+        wakeupCount++;
+    }
+
+    /**
+     * Chooses which stage a queue wakes first when several are waiting on it. This must be set before the line is built.
+     *
+     * @param wakeOrder One of {@link WaiterList#FIFO}, {@link WaiterList#LIFO} or {@link WaiterList#ID}
+     */
+    public void setWakeOrder(int wakeOrder) {
+        if(queueCount>0)
+            throw new IllegalStateException("The wake order must be set before the line is built");
+        this.wakeOrder = wakeOrder;
+    }
+
+    public int getWakeOrder() {
+        return wakeOrder;
+    }
+
+    /**
+     * Chooses the quantiles of the time widgets wait that every queue estimates, see {@link QuantileEstimator}. This
+     * must be set before the line is built.
+     *
+     * @param fractions The quantiles, each from 0 to 1, for example 0.95 for the 95th percentile
+     */
+    public void setWaitQuantiles(double... fractions) {
+        if(queueCount>0)
+            throw new IllegalStateException("The quantiles must be set before the line is built");
+        this.waitQuantiles = fractions.clone();
+    }
+
+    /**
+     * @return The quantiles of the time widgets wait that every queue estimates. This must not be modified.
+     */
+    public double[] getWaitQuantiles() {
+        return waitQuantiles;
+    }
+
+    /**
+     * Chooses how many processing times each stage draws at once. This must be set before the line is built.
+     *
+     * @param batchSize The size of the block of times, or 0 to draw each time when it is needed. This must not be negative.
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize<0)
+            throw new IllegalArgumentException("The batch size cannot be negative");
+        if(stageCount>0)
+            throw new IllegalStateException("The batch size must be set before the line is built");
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets how long the simulation runs for. This must be set before the line is run.
      *
-     * @param job The job to add to the production line. The job must not be null.
+     * @param completionTime The time the simulation ends. This must be positive.
      */
-    public void addJob(Job job) {
-        this.jobs.add(job);
+    public void setCompletionTime(double completionTime) {
+        if(!(completionTime>0))
+            throw new IllegalArgumentException("The completion time must be positive");
+        this.completionTime = completionTime;
+    }
+
+    /**
+     * Wakes stages in the order they were marked until there are none left. Waking a stage may mark more stages.
+     */
+    void runWakeups() {
+        while (wakeupCount>0) {
+            int id = wakeups[wakeupHead];
+            if(++wakeupHead==wakeups.length)
+                wakeupHead = 0;
+            wakeupCount--;
+            waking[id] = false;
+            stages[id].wake();
+        }
+    }
+
+    /**
+     * Adds a stage to the production line. Every stage calls this once when it is created.
+     *
+     * @param stage The new stage
+     * @return The id of the stage
+     */
+    public int addStage(Stage stage) {
+        if(stageCount==stages.length) {
+            stages = Arrays.copyOf(stages,stageCount*2);
+            waking = Arrays.copyOf(waking,stageCount*2);
+            //unroll the ring so it starts at 0 in the larger array
+            int[] grown = new int[stageCount*2];
+            for(int i=0;i<wakeupCount;i++)
+                grown[i] = wakeups[(wakeupHead+i) % wakeups.length];
+            wakeups = grown;
+            wakeupHead = 0;
+        }
+        stages[stageCount] = stage;
+        return stageCount++;
+    }
+
+    /**
+     * Adds a queue to the production line. Every queue calls this once when it is created.
+     *
+     * @param queue The new queue
+     * @return The id of the queue
+     */
+    public int addQueue(InterStageQueue queue) {
+        if(queueCount==interStageQueues.length)
+            interStageQueues = Arrays.copyOf(interStageQueues,queueCount*2);
+        interStageQueues[queueCount] = queue;
+        return queueCount++;
+    }
+
+    /**
+     * @return The warehouse that final stages move finished widgets to.
+     */
+    public Warehouse getWarehouse() {
+        return warehouse;
+    }
+
+    /**
+     * @return The widgets on this line
+     */
+    public WidgetTable getWidgets() {
+        return widgets;
+    }
+
+    /**
+     * @return The generator of the ids of the widgets created on this line
+     */
+    public IdGenerator getIdGenerator() {
+        return ids;
+    }
+
+    /**
+     * @return The table of routes that widgets take through this line.
+     */
+    public RouteTable getRoutes() {
+        return routes;
     }
 
     /**
@@ -205,4 +879,133 @@ public class ProductionLine {
     public double getCompletionTime() {
         return completionTime;
     }
+
+    /**
+     * @return The amount of jobs that have been run by the simulation.
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Every stage calls this once when it is created, so the streams handed out only depend on the seed of the line
+     * and the order in which the stages are built.
+     *
+     * @return The random stream of a stage, which does not overlap the stream of any other stage of the line.
+     */
+    public RandomStream nextStream() {
+        RandomStream stream = streams.copy();
+        streams.jump();
+        return stream;
+    }
+
+    /**
+     * Makes this line hand out substreams from the same stream as another line. The segments of a {@link ParallelLine}
+     * share one stream and are built in the order of the topology, so every stage gets the same stream that it gets on
+     * a line that is not partitioned.
+     *
+     * @param other The line to share the stream of
+     */
+    void shareStreams(ProductionLine other) {
+        this.streams = other.streams;
+    }
+
+    /**
+     * Takes a copy of everything about the line that changes as the simulation runs, so an optimistic
+     * {@link ParallelLine} can roll the line back. This must only be called between jobs. The routes are not saved, a
+     * route that is only taken by a widget that is rolled back is simply never counted.
+     *
+     * @return The saved state
+     */
+    State save() {
+        if(wakeupCount>0)
+            throw new IllegalStateException("The line can only be saved between jobs");
+        return new State(this);
+    }
+
+    /**
+     * Puts the line, its stages and its queues back to a saved state. The state is copied so it can be restored again.
+     *
+     * @param state A state saved from this line
+     */
+    void restore(State state) {
+        currentTime = state.currentTime;
+        eventCount = state.eventCount;
+        warmupTime = state.warmupTime;
+        warmupAt = state.warmupAt;
+        nextObservation = state.nextObservation;
+        jobs = state.jobs.copy();
+        widgets = state.widgets.copy();
+        ids = state.ids.copy();
+        warehouse.restore(state.warehouse);
+        for(int i=0;i<stageCount;i++)
+            stages[i].restore(state.stages[i]);
+        for(int i=0;i<queueCount;i++)
+            interStageQueues[i].restore(state.queues[i]);
+    }
+
+    int getStageCount() {
+        return stageCount;
+    }
+
+    /**
+     * @param id The id of a stage of this line
+     * @return The stage
+     */
+    Stage getStage(int id) {
+        return stages[id];
+    }
+
+    /**
+     * @param id The id of a queue of this line
+     * @return The queue
+     */
+    InterStageQueue getQueue(int id) {
+        return interStageQueues[id];
+    }
+
+    /**
+     * Adds to the amount of jobs run, used when the statistics of the segments of a {@link ParallelLine} are merged.
+     *
+     * @param count The amount of jobs run elsewhere
+     */
+    void addEventCount(long count) {
+        eventCount += count;
+    }
+
+    /**
+     * The state of a line, see {@link #save()}.
+     */
+    static class State {
+
+        private final double currentTime;
+        private final long eventCount;
+        private final double warmupTime;
+        private final double warmupAt;
+        private final double nextObservation;
+        private final EventList jobs;
+        private final WidgetTable widgets;
+        private final IdGenerator ids;
+        private final Warehouse.State warehouse;
+        private final Stage.State[] stages;
+        private final InterStageQueue.State[] queues;
+
+        private State(ProductionLine line) {
+            this.currentTime = line.currentTime;
+            this.eventCount = line.eventCount;
+            this.warmupTime = line.warmupTime;
+            this.warmupAt = line.warmupAt;
+            this.nextObservation = line.nextObservation;
+            this.jobs = line.jobs.copy();
+            this.widgets = line.widgets.copy();
+            this.ids = line.ids.copy();
+            this.warehouse = line.warehouse.save();
+            this.stages = new Stage.State[line.stageCount];
+            for(int i=0;i<stages.length;i++)
+                stages[i] = line.stages[i].save();
+            this.queues = new InterStageQueue.State[line.queueCount];
+            for(int i=0;i<queues.length;i++)
+                queues[i] = line.interStageQueues[i].save();
+        }
+    }
 }
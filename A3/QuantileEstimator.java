@@ -0,0 +1,160 @@
+/**
+ * File: QuantileEstimator.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Estimates a single quantile of a stream of values with the P-squared algorithm of Jain and
+ * Chlamtac, for example the 95th percentile of the time widgets wait in a queue, without storing the values. Five
+ * markers are kept: the smallest value, the largest value, the quantile itself and one halfway to it from either end.
+ * Each marker has a height, its estimate of the value at its rank, and a position, the amount of values at or below it.
+ * As each value arrives the positions of the markers above it move up by one and where each marker should be moves up
+ * by its share of the quantile. A marker more than one position from where it should be is moved one step towards it,
+ * and its height is adjusted with a parabola through it and its neighbours, or a straight line if the parabola would
+ * put it out of order.
+ *
+ * Every value costs a fixed amount of work and the memory is five heights and five positions however many values
+ * there are, so a quantile can be kept for every queue of a large line.
+ */
+public class QuantileEstimator {
+
+    private static final int MARKERS = 5;
+
+    private final double fraction;
+    private final double[] heights;
+    private final double[] positions; //the actual position of each marker, starting from 1
+    private final double[] desired; //where each marker should be
+    private final double[] increments; //how far where each marker should be moves with each value
+    private long count;
+
+    /**
+     * @param fraction The quantile to estimate, for example 0.95 for the 95th percentile
+     * @throws IllegalArgumentException if the fraction is not between 0 and 1
+     */
+    public QuantileEstimator(double fraction) {
+        if(!(fraction>=0 && fraction<=1))
+            throw new IllegalArgumentException("A quantile must be between 0 and 1");
+        this.fraction = fraction;
+        this.heights = new double[MARKERS];
+        this.positions = new double[MARKERS];
+        this.desired = new double[MARKERS];
+        this.increments = new double[]{0,fraction/2,fraction,(1+fraction)/2,1};
+        reset();
+    }
+
+    private QuantileEstimator(QuantileEstimator other) {
+        this.fraction = other.fraction;
+        this.heights = other.heights.clone();
+        this.positions = other.positions.clone();
+        this.desired = other.desired.clone();
+        this.increments = other.increments;
+        this.count = other.count;
+    }
+
+    /**
+     * Adds the next value of the stream.
+     *
+     * @param value The value
+     */
+    public void add(double value) {
+        if(count<MARKERS) {
+            //the first five values are kept in order and become the initial heights
+            int i = (int) count++;
+            while (i>0 && heights[i-1]>value) {
+                heights[i] = heights[i-1];
+                i--;
+            }
+            heights[i] = value;
+            return;
+        }
+        count++;
+
+        //find the cell the value falls in, stretching the end markers if it is a new extreme
+        int cell;
+        if(value<heights[0]) {
+            heights[0] = value;
+            cell = 0;
+        } else if(value>=heights[MARKERS-1]) {
+            heights[MARKERS-1] = value;
+            cell = MARKERS-2;
+        } else {
+            cell = 0;
+            while (value>=heights[cell+1])
+                cell++;
+        }
+        for(int i=cell+1;i<MARKERS;i++)
+            positions[i]++;
+        for(int i=0;i<MARKERS;i++)
+            desired[i] += increments[i];
+
+        //move each middle marker towards where it should be if it is at least a position away
+        for(int i=1;i<MARKERS-1;i++) {
+            double offset = desired[i] - positions[i];
+            if((offset>=1 && positions[i+1]-positions[i]>1) || (offset<=-1 && positions[i-1]-positions[i]<-1)) {
+                int step = offset>0 ? 1 : -1;
+                double height = parabolic(i,step);
+                if(!(heights[i-1]<height && height<heights[i+1]))
+                    height = linear(i,step);
+                heights[i] = height;
+                positions[i] += step;
+            }
+        }
+    }
+
+    private double parabolic(int i, int step) {
+        double below = positions[i] - positions[i-1];
+        double above = positions[i+1] - positions[i];
+        double span = positions[i+1] - positions[i-1];
+        return heights[i] + step/span * ((below+step)*(heights[i+1]-heights[i])/above
+                + (above-step)*(heights[i]-heights[i-1])/below);
+    }
+
+    private double linear(int i, int step) {
+        return heights[i] + step*(heights[i+step]-heights[i])/(positions[i+step]-positions[i]);
+    }
+
+    /**
+     * @return The estimate of the quantile, exact until five values have been added, or NaN if there are none
+     */
+    public double getQuantile() {
+        if(count==0)
+            return Double.NaN;
+        if(count<=MARKERS) {
+            //the heights are the values so far in order
+            int rank = (int) Math.max(1,Math.ceil(fraction*count));
+            return heights[rank-1];
+        }
+        return heights[2];
+    }
+
+    /**
+     * @return The quantile being estimated, from 0 to 1
+     */
+    public double getFraction() {
+        return fraction;
+    }
+
+    /**
+     * @return The amount of values added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Forgets every value, used to delete the warm-up of a run.
+     */
+    public void reset() {
+        count = 0;
+        for(int i=0;i<MARKERS;i++) {
+            positions[i] = i+1;
+            desired[i] = 1 + 4*increments[i];
+        }
+    }
+
+    /**
+     * @return An independent copy, so an optimistic {@link ParallelLine} can roll the estimate back
+     */
+    public QuantileEstimator copy() {
+        return new QuantileEstimator(this);
+    }
+}
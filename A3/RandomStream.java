@@ -0,0 +1,183 @@
+/**
+ * File: RandomStream.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: A stream of random numbers from the xoshiro256++ generator of Blackman and Vigna. The generator has a
+ * period of 2^256 - 1 and can jump ahead by 2^128 or 2^192 numbers in constant time, which is used to split one master seed
+ * into substreams that are guaranteed not to overlap:
+ *   - every replication starts 2^192 numbers after the last, see {@link #longJump()}
+ *   - every stage of a replication starts 2^128 numbers after the last, see {@link #jump()}
+ * so up to 2^64 replications each of up to 2^64 stages can draw 2^128 numbers each without sharing any. A stream can
+ * also be made antithetic, in which case every uniform number u it gives is replaced by 1 - u. Both streams of an
+ * antithetic pair are marked as paired, so samplers that have a faster method which does not pair can tell. Unlike
+ * {@link java.util.Random} the stream is not synchronised, so each stream must only be used by one thread at a time.
+ */
+public class RandomStream {
+
+    private static final long[] JUMP = {
+            0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL, 0xa9582618e03fc9aaL, 0x39abdc4529b1661cL };
+    private static final long[] LONG_JUMP = {
+            0x76e15d3efefdcbbfL, 0xc5004e441c522fb3L, 0x77710069854ee241L, 0x39109bb02acbe635L };
+
+    private long s0;
+    private long s1;
+    private long s2;
+    private long s3;
+    private final boolean antithetic;
+    private final boolean paired; //true for both streams of an antithetic pair
+
+    /**
+     * Creates a new stream. The 256 bits of state are filled from the seed with SplitMix64, as recommended by the
+     * authors of the generator, so that similar seeds still give unrelated streams.
+     *
+     * @param seed The seed of the stream
+     */
+    public RandomStream(long seed) {
+        s0 = splitMix(seed += 0x9e3779b97f4a7c15L);
+        s1 = splitMix(seed += 0x9e3779b97f4a7c15L);
+        s2 = splitMix(seed += 0x9e3779b97f4a7c15L);
+        s3 = splitMix(seed + 0x9e3779b97f4a7c15L);
+        antithetic = false;
+        paired = false;
+    }
+
+    private RandomStream(long s0, long s1, long s2, long s3, boolean antithetic, boolean paired) {
+        this.s0 = s0;
+        this.s1 = s1;
+        this.s2 = s2;
+        this.s3 = s3;
+        this.antithetic = antithetic;
+        this.paired = paired;
+    }
+
+    private static long splitMix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return A new stream at the same position as this one. The two streams produce the same numbers.
+     */
+    public RandomStream copy() {
+        return new RandomStream(s0,s1,s2,s3,antithetic,paired);
+    }
+
+    /**
+     * @return A new stream at the same position as this one whose uniform numbers are 1 - u for every u of this stream.
+     *         Streams split from it are antithetic as well.
+     */
+    public RandomStream antithetic() {
+        return new RandomStream(s0,s1,s2,s3,!antithetic,paired);
+    }
+
+    /**
+     * @return A new stream at the same position as this one that gives the same numbers, marked as one of an antithetic
+     *         pair along with its {@link #antithetic()} copy. Streams split from it are paired as well.
+     */
+    public RandomStream paired() {
+        return new RandomStream(s0,s1,s2,s3,antithetic,true);
+    }
+
+    public boolean isAntithetic() {
+        return antithetic;
+    }
+
+    /**
+     * @return True if the stream is one of an antithetic pair, so samplers must give times that rise with each uniform
+     *         number, see {@link ServiceTime#isAntithetic()}
+     */
+    public boolean isPaired() {
+        return paired;
+    }
+
+    /**
+     * @return The next 64 random bits
+     */
+    public long nextLong() {
+        long result = Long.rotateLeft(s0 + s3, 23) + s0;
+        long t = s1 << 17;
+        s2 ^= s0;
+        s3 ^= s1;
+        s1 ^= s2;
+        s0 ^= s3;
+        s2 ^= t;
+        s3 = Long.rotateLeft(s3, 45);
+        return result;
+    }
+
+    /**
+     * The next 64 random bits for a sampler that works on raw bits rather than a uniform number, such as the
+     * {@link Ziggurat}. If the stream is antithetic every bit is flipped, so any number read from the top bits as a
+     * fraction u becomes 1 - u and the sampler gives the antithetic of its sample, as {@link #nextDouble()} does.
+     *
+     * @return The next 64 random bits, flipped if the stream is antithetic
+     */
+    public long nextBits() {
+        long bits = nextLong();
+        return antithetic ? ~bits : bits;
+    }
+
+    /**
+     * @return A uniform random number in [0,1) with 53 bits of precision, or in (0,1] if the stream is antithetic
+     */
+    public double nextDouble() {
+        double u = (nextLong() >>> 11) * 0x1.0p-53;
+        return antithetic ? 1 - u : u;
+    }
+
+    /**
+     * Moves the stream forward by 2^128 numbers. This is used to give each stage of a line its own substream.
+     */
+    public void jump() {
+        jump(JUMP);
+    }
+
+    /**
+     * Moves the stream forward by 2^192 numbers. This is used to give each replication its own substream which can then
+     * be split further with {@link #jump()}.
+     */
+    public void longJump() {
+        jump(LONG_JUMP);
+    }
+
+    private void jump(long[] polynomial) {
+        long t0 = 0;
+        long t1 = 0;
+        long t2 = 0;
+        long t3 = 0;
+        for(long word : polynomial) {
+            for(int bit=0;bit<64;bit++) {
+                if((word & (1L << bit))!=0) {
+                    t0 ^= s0;
+                    t1 ^= s1;
+                    t2 ^= s2;
+                    t3 ^= s3;
+                }
+                nextLong();
+            }
+        }
+        s0 = t0;
+        s1 = t1;
+        s2 = t2;
+        s3 = t3;
+    }
+
+    /**
+     * Splits a master seed into the streams of a set of replications, each {@link #longJump()} apart.
+     *
+     * @param seed The master seed
+     * @param replications The amount of replications
+     * @return The stream of each replication in order
+     */
+    public static RandomStream[] replications(long seed, int replications) {
+        RandomStream master = new RandomStream(seed);
+        RandomStream[] streams = new RandomStream[replications];
+        for(int i=0;i<replications;i++) {
+            streams[i] = master.copy();
+            master.longJump();
+        }
+        return streams;
+    }
+}
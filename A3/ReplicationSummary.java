@@ -0,0 +1,190 @@
+/**
+ * File: ReplicationSummary.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Merges the {@link LineStatistics} of independent replications of the same production line into means
+ * with confidence intervals. Every figure printed for a single run has a matching {@link SampleStatistics} here.
+ */
+public class ReplicationSummary {
+
+    private final LineStatistics layout; //the first replication, used for the names of each row
+    private final SampleStatistics[] work;
+    private final SampleStatistics[] starve;
+    private final SampleStatistics[] block;
+    private final SampleStatistics[] averageTime;
+    private final SampleStatistics[] averageWidgets;
+    private final SampleStatistics[] paths;
+    private final SampleStatistics warmup;
+    private Histogram leadTimes; //the lead times of every replication pooled, null unless they were recorded
+    private final SampleStatistics[][] waitQuantiles; //indexed by queue then quantile
+
+    /**
+     * Creates a new summary.
+     *
+     * @param layout Any replication of the line. This is only used for the names and sizes of the tables.
+     */
+    public ReplicationSummary(LineStatistics layout) {
+        this.layout = layout;
+        this.work = create(layout.getStageCount());
+        this.starve = create(layout.getStageCount());
+        this.block = create(layout.getStageCount());
+        this.averageTime = create(layout.getQueueCount());
+        this.averageWidgets = create(layout.getQueueCount());
+        this.paths = create(layout.getPathCount());
+        this.warmup = new SampleStatistics();
+        this.waitQuantiles = new SampleStatistics[layout.getQueueCount()][];
+        for(int i=0;i<waitQuantiles.length;i++)
+            waitQuantiles[i] = create(layout.getWaitQuantileCount());
+    }
+
+    private static SampleStatistics[] create(int size) {
+        SampleStatistics[] statistics = new SampleStatistics[size];
+        for(int i=0;i<size;i++)
+            statistics[i] = new SampleStatistics();
+        return statistics;
+    }
+
+    /**
+     * Adds the results of a replication to the summary.
+     *
+     * @param replication The statistics of a single run. This must be of the same production line as the layout.
+     */
+    public void add(LineStatistics replication) {
+        for(int i=0;i<work.length;i++) {
+            work[i].add(replication.getWorkPercentage(i));
+            starve[i].add(replication.getStarvationTime(i));
+            block[i].add(replication.getBlockedTime(i));
+        }
+        for(int i=0;i<averageTime.length;i++) {
+            averageTime[i].add(replication.getAverageTimeSpent(i));
+            averageWidgets[i].add(replication.getAverageWidgets(i));
+        }
+        for(int i=0;i<paths.length;i++) {
+            paths[i].add(replication.getWidgets(i));
+        }
+        warmup.add(replication.getWarmupTime());
+        for(int i=0;i<waitQuantiles.length;i++) {
+            for(int j=0;j<waitQuantiles[i].length;j++)
+                waitQuantiles[i][j].add(replication.getWaitQuantile(i,j));
+        }
+        if(replication.getLeadTimes()!=null) {
+            if(leadTimes==null)
+                leadTimes = new Histogram();
+            leadTimes.merge(replication.getLeadTimes());
+        }
+    }
+
+    /**
+     * @return The amount of replications in the summary.
+     */
+    public long getReplications() {
+        return work.length==0 ? 0 : work[0].getCount();
+    }
+
+    public SampleStatistics getWorkPercentage(int stage) {
+        return work[stage];
+    }
+
+    public SampleStatistics getStarvationTime(int stage) {
+        return starve[stage];
+    }
+
+    public SampleStatistics getBlockedTime(int stage) {
+        return block[stage];
+    }
+
+    public SampleStatistics getAverageTimeSpent(int queue) {
+        return averageTime[queue];
+    }
+
+    public SampleStatistics getAverageWidgets(int queue) {
+        return averageWidgets[queue];
+    }
+
+    public SampleStatistics getWidgets(int path) {
+        return paths[path];
+    }
+
+    /**
+     * @return When the statistics of each replication started, 0 for a replication whose warm-up was not deleted
+     */
+    public SampleStatistics getWarmupTime() {
+        return warmup;
+    }
+
+    /**
+     * @return The lead times of the widgets of every replication pooled together, or null if they were not recorded
+     */
+    public Histogram getLeadTimes() {
+        return leadTimes;
+    }
+
+    public SampleStatistics getWaitQuantile(int queue, int quantile) {
+        return waitQuantiles[queue][quantile];
+    }
+
+    /**
+     * @return The statistics of any replication, whose names describe the rows of this summary.
+     */
+    public LineStatistics getLayout() {
+        return layout;
+    }
+
+    /**
+     * Prints the summary in the same layout as {@link ProductionLine#printStatistics()} except each figure is printed
+     * as mean +- the half width of its 95% confidence interval.
+     */
+    public void print() {
+        System.out.println("Replications: "+getReplications()+" (mean +- 95% confidence half width)");
+        if(warmup.getMean()>0)
+            System.out.println("Warm-up: "+warmup);
+        System.out.println("Production Statistics -----------------------------");
+        System.out.format("%-15s%-25s%-25s%-25s%n","Stage: ","Work[%]","Starve[t]","Block[t]");
+        for(int i=0;i<work.length;i++) {
+            System.out.format("%-15s%-25s%-25s%-25s%n",layout.getStageName(i),work[i],starve[i],block[i]);
+        }
+        System.out.println("Storage Queues ---------------------------------");
+        System.out.format("%-15s%-25s%-25s%n","Store","AvgTime[t]","AvgWgts");
+        for(int i=0;i<averageTime.length;i++) {
+            System.out.format("%-15s%-25s%-25s%n",layout.getQueueName(i),averageTime[i],averageWidgets[i]);
+        }
+        System.out.println("Production Paths--------");
+        for(int i=0;i<paths.length;i++) {
+            System.out.println(layout.getPathName(i) + ": " + paths[i]);
+        }
+    }
+
+    /**
+     * Prints the percentiles of the lead time of the widgets of every replication pooled together.
+     *
+     * @param percentiles The percentiles to print, each from 0 to 100
+     * @throws IllegalStateException if the replications did not record lead times
+     */
+    public void printLeadTimes(double... percentiles) {
+        if(leadTimes==null)
+            throw new IllegalStateException("The replications did not record lead times");
+        System.out.println("Lead Time (pooled over replications)--------");
+        leadTimes.print(percentiles);
+    }
+
+    /**
+     * Prints the estimated quantiles of the time spent in each queue, each as the mean over the replications +- the
+     * half width of its 95% confidence interval.
+     *
+     * @param fractions The quantiles the replications estimated, from 0 to 1, in the order they were estimated
+     */
+    public void printWaitQuantiles(double... fractions) {
+        System.out.println("Queue Wait--------");
+        System.out.format("%-15s","Store");
+        for(double fraction : fractions)
+            System.out.format("%-25s",ProductionLine.percentileName(fraction));
+        System.out.println();
+        for(int i=0;i<waitQuantiles.length;i++) {
+            System.out.format("%-15s",layout.getQueueName(i));
+            for(SampleStatistics quantile : waitQuantiles[i])
+                System.out.format("%-25s",quantile);
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * File: Replications.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Runs several independent replications of the same {@link ProductionLine} concurrently. A single run
+ * of the simulation is strictly sequential, however separate lines share no state so each replication can run on its own
+ * core. Each replication is given its own substream of the master seed, see {@link RandomStream}, so the random streams of
+ * the replications never overlap and the whole experiment can be repeated.
+ */
+public class Replications {
+
+    private final LineOptions options;
+    private final int replications;
+    private final long seed;
+
+    /**
+     * Creates a new set of replications.
+     *
+     * @param options How to build the line of each replication
+     * @param replications The amount of independent runs. This must be positive.
+     * @param seed The master seed from which the stream of each replication is split
+     */
+    public Replications(LineOptions options, int replications, long seed) {
+        if(replications<=0)
+            throw new IllegalArgumentException("There must be at least one replication");
+
+        this.options = options;
+        this.replications = replications;
+        this.seed = seed;
+    }
+
+    /**
+     * Runs every replication on a fixed pool with one thread per available processor and merges the results.
+     *
+     * @return The merged statistics of all of the replications
+     */
+    public ReplicationSummary run() {
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return run(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs every replication on the given executor and merges the results. The results are merged in the order of the
+     * replications so the summary does not depend on which replication finishes first.
+     *
+     * @param executor The executor to run the replications on
+     * @return The merged statistics of all of the replications
+     */
+    public ReplicationSummary run(ExecutorService executor) {
+        List<Future<LineStatistics>> results = new ArrayList<>(replications);
+        for(RandomStream stream : getStreams()) {
+            results.add(executor.submit(() -> runReplication(options,stream)));
+        }
+
+        ReplicationSummary summary = null;
+        for(Future<LineStatistics> result : results) {
+            LineStatistics statistics = join(result);
+            if(summary==null)
+                summary = new ReplicationSummary(statistics);
+            summary.add(statistics);
+        }
+        return summary;
+    }
+
+    /**
+     * @return The random stream of each replication in order.
+     */
+    public RandomStream[] getStreams() {
+        return RandomStream.replications(seed,replications);
+    }
+
+    /**
+     * Builds, runs and gathers statistics on a single production line, or on an antithetic pair of lines.
+     *
+     * @param options How to build the line
+     * @param stream The random stream of the replication. This is not changed.
+     * @return The statistics of the run, or the average of the antithetic pair if the options ask for antithetic runs
+     */
+    static LineStatistics runReplication(LineOptions options, RandomStream stream) {
+        if(!options.isAntithetic())
+            return options.run(stream).getStatistics();
+
+        //the two runs of the pair are negatively correlated so their average varies less than either run
+        RandomStream paired = stream.paired();
+        ProductionLine line = options.run(paired);
+        ProductionLine mirror = options.run(paired.antithetic());
+        return LineStatistics.average(line.getStatistics(),mirror.getStatistics());
+    }
+
+    /**
+     * Waits for a replication to finish. Failures inside of the replication are rethrown unchanged when possible.
+     *
+     * @param result The pending result of the replication
+     * @return The statistics of the replication
+     */
+    static <T> T join(Future<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a replication",e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
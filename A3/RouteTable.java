@@ -0,0 +1,211 @@
+import java.util.Arrays;
+
+/**
+ * File: RouteTable.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Gives every route through the production line a compact integer id. A route is the sequence of
+ * stages a widget has been through. Routes form a tree, the route of a widget after it visits a stage is a child of its
+ * route before, so each route is stored as its parent route and its last stage. Looking up a child is a single probe of an
+ * open addressing hash map from (route, stage) to the child, so following a widget along the line costs O(1) per stage no
+ * matter how the line is laid out. Ids are dense, starting with {@link #EMPTY}, so statistics about routes can be kept in
+ * arrays indexed by the id.
+ *
+ * Each segment of a {@link ParallelLine} keeps its own table. A widget that crosses into the next segment starts on a link,
+ * a root standing for its whole route through the segments before, and the tables are joined back into one after the run.
+ */
+public class RouteTable {
+
+    /**
+     * The id of the route that has not visited any stage.
+     */
+    public static final int EMPTY = 0;
+
+    private static final long FREE = -1; //marks an unused slot of the hash map
+    private static final int LINK = -2; //the last stage of a link to route r is stored as LINK - r
+
+    //hash map from (parent << 32 | stage) to the child route
+    private long[] keys;
+    private int[] children;
+    private int mask;
+
+    //the routes, indexed by id
+    private int[] parents;
+    private int[] lastStages;
+    private int[] lengths;
+    private int size;
+
+    //the link to each route of the table of the segment before, plus 1 so that 0 means no link yet. Null until needed
+    private int[] links;
+
+    public RouteTable() {
+        this.keys = new long[64];
+        Arrays.fill(keys,FREE);
+        this.children = new int[64];
+        this.mask = keys.length-1;
+
+        this.parents = new int[16];
+        this.lastStages = new int[16];
+        this.lengths = new int[16];
+        //the empty route
+        this.parents[EMPTY] = EMPTY;
+        this.lastStages[EMPTY] = -1;
+        this.size = 1;
+    }
+
+    /**
+     * Finds the route taken by a widget on the given route after it visits a stage. The route is created if no widget has
+     * taken it before.
+     *
+     * @param route The id of the route so far
+     * @param stage The id of the stage being visited. This must not be negative.
+     * @return The id of the extended route
+     */
+    public int extend(int route, int stage) {
+        long key = ((long) route << 32) | stage;
+        int slot = hash(key) & mask;
+        while (keys[slot]!=FREE) {
+            if(keys[slot]==key)
+                return children[slot];
+            slot = (slot+1) & mask;
+        }
+
+        int child = add(route,stage);
+        keys[slot] = key;
+        children[slot] = child;
+        //keep the map at most half full so probes stay short
+        if(child*2>keys.length)
+            rehash();
+        return child;
+    }
+
+    /**
+     * Finds the route that stands for a route of the segment before this one, see {@link ParallelLine}. A link has no
+     * stages of its own, widgets that cross into this segment extend it with {@link #extend(int, int)} as usual.
+     *
+     * @param foreignRoute The id of the route in the table of the segment before
+     * @return The id of the link
+     */
+    public int link(int foreignRoute) {
+        if(links==null)
+            links = new int[16];
+        if(foreignRoute>=links.length)
+            links = Arrays.copyOf(links,Math.max(foreignRoute+1,links.length*2));
+        if(links[foreignRoute]==0) {
+            int id = add(EMPTY,LINK - foreignRoute);
+            lengths[id] = 0; //a link has no stages of its own
+            links[foreignRoute] = id + 1;
+        }
+        return links[foreignRoute] - 1;
+    }
+
+    /**
+     * @param route The id of a route
+     * @return The route of the segment before that the route starts from, or -1 if it starts in this segment
+     */
+    public int getLinkedRoute(int route) {
+        int current = route;
+        while (current!=EMPTY && lastStages[current]>=0)
+            current = parents[current];
+        return current==EMPTY ? -1 : LINK - lastStages[current];
+    }
+
+    /**
+     * @return The amount of routes, including the empty route. Every id is less than this.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param route The id of a route
+     * @return The route before the last stage was visited, or {@link #EMPTY} for the empty route
+     */
+    public int getParent(int route) {
+        return parents[route];
+    }
+
+    /**
+     * @param route The id of a route
+     * @return The id of the last stage of the route, or -1 for the empty route
+     */
+    public int getLastStage(int route) {
+        return lastStages[route];
+    }
+
+    /**
+     * @param route The id of a route
+     * @return The amount of stages on the route
+     */
+    public int getLength(int route) {
+        return lengths[route];
+    }
+
+    /**
+     * @param route The id of a route
+     * @param stage The id of a stage
+     * @return True if the route went through the stage
+     */
+    public boolean contains(int route, int stage) {
+        for(int current=route;current!=EMPTY;current=parents[current]) {
+            if(lastStages[current]==stage)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param route The id of a route
+     * @return The ids of the stages of the route in the order they were visited
+     */
+    public int[] getStages(int route) {
+        int[] stages = new int[lengths[route]];
+        int current = route;
+        for(int i=stages.length-1;i>=0;i--) {
+            stages[i] = lastStages[current];
+            current = parents[current];
+        }
+        return stages;
+    }
+
+    private int add(int parent, int stage) {
+        if(size==parents.length) {
+            parents = Arrays.copyOf(parents,size*2);
+            lastStages = Arrays.copyOf(lastStages,size*2);
+            lengths = Arrays.copyOf(lengths,size*2);
+        }
+        parents[size] = parent;
+        lastStages[size] = stage;
+        lengths[size] = lengths[parent]+1;
+        return size++;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldChildren = children;
+        keys = new long[oldKeys.length*2];
+        Arrays.fill(keys,FREE);
+        children = new int[keys.length];
+        mask = keys.length-1;
+        for(int i=0;i<oldKeys.length;i++) {
+            if(oldKeys[i]==FREE)
+                continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (keys[slot]!=FREE)
+                slot = (slot+1) & mask;
+            keys[slot] = oldKeys[i];
+            children[slot] = oldChildren[i];
+        }
+    }
+
+    /**
+     * Mixes the bits of a key (the finaliser of MurmurHash3) so that neighbouring routes and stages do not cluster.
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
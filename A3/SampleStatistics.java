@@ -0,0 +1,147 @@
+/**
+ * File: SampleStatistics.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Accumulates independent observations of a single metric, for example the work percentage of a stage
+ * across several replications, and gives the sample mean together with a Student-t confidence interval. The mean and
+ * variance are updated with Welford's method so that observations do not need to be stored.
+ */
+public class SampleStatistics {
+
+    private long count;
+    private double mean;
+    private double squares; //sum of squared differences from the mean
+
+    /**
+     * Adds a new observation.
+     *
+     * @param value The observed value
+     */
+    public void add(double value) {
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        squares += delta * (value - mean);
+    }
+
+    /**
+     * @return The amount of observations added thus far.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return The sample mean, or 0 if there are no observations.
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * @return The unbiased sample variance, or 0 if there are less than two observations.
+     */
+    public double getVariance() {
+        if(count<2)
+            return 0;
+        return squares/(count-1);
+    }
+
+    /**
+     * @return The estimated standard error of the sample mean.
+     */
+    public double getStandardError() {
+        if(count<2)
+            return 0;
+        return Math.sqrt(getVariance()/count);
+    }
+
+    /**
+     * Calculates the half width of a two-sided confidence interval for the mean, that is the true mean lies in
+     * mean +- halfWidth with the given confidence.
+     *
+     * @param confidence The confidence level, for example 0.95. This must be between 0 and 1 exclusive.
+     * @return The half width of the interval, or positive infinity if there are less than two observations.
+     */
+    public double getHalfWidth(double confidence) {
+        if(count<2)
+            return Double.POSITIVE_INFINITY;
+
+        return studentT(0.5 + confidence / 2, count - 1) * getStandardError();
+    }
+
+    /**
+     * Approximates the quantile function of the student t distribution. One and two degrees of freedom are calculated
+     * exactly, otherwise the Cornish-Fisher expansion around the normal quantile is used (Abramowitz and Stegun 26.7.5)
+     * which is accurate to well within the precision that is printed.
+     *
+     * @param p The probability. This must be between 0 and 1 exclusive.
+     * @param df The degrees of freedom. This must be positive.
+     * @return The value t such that P(T <= t) = p
+     */
+    public static double studentT(double p, long df) {
+        if(df==1)
+            return Math.tan(Math.PI * (p - 0.5));
+        if(df==2)
+            return (2*p - 1) / Math.sqrt(2 * p * (1 - p));
+
+        double z = normal(p);
+        double z3 = z*z*z;
+        double z5 = z3*z*z;
+        double z7 = z5*z*z;
+        double z9 = z7*z*z;
+        double v = df;
+        return z + (z3 + z) / (4 * v)
+                + (5*z5 + 16*z3 + 3*z) / (96 * v*v)
+                + (3*z7 + 19*z5 + 17*z3 - 15*z) / (384 * v*v*v)
+                + (79*z9 + 776*z7 + 1482*z5 - 1920*z3 - 945*z) / (92160 * v*v*v*v);
+    }
+
+    /**
+     * Approximates the quantile function of the standard normal distribution using Acklam's rational approximation
+     * which has a relative error of less than 1.2e-9.
+     *
+     * @param p The probability. This must be between 0 and 1 exclusive.
+     * @return The value z such that P(Z <= z) = p
+     */
+    public static double normal(double p) {
+        if(p<=0 || p>=1)
+            throw new IllegalArgumentException("Probability must be between 0 and 1");
+
+        final double[] a = {-3.969683028665376e+01, 2.209460984245205e+02, -2.759285104469687e+02,
+                1.383577518672690e+02, -3.066479806614716e+01, 2.506628277459239e+00};
+        final double[] b = {-5.447609879822406e+01, 1.615858368580409e+02, -1.556989798598866e+02,
+                6.680131188771972e+01, -1.328068155288572e+01};
+        final double[] c = {-7.784894002430293e-03, -3.223964580411365e-01, -2.400758277161838e+00,
+                -2.549732539343734e+00, 4.374664141464968e+00, 2.938163982698783e+00};
+        final double[] d = {7.784695709041462e-03, 3.224671290700398e-01, 2.445134137142996e+00,
+                3.754408661907416e+00};
+
+        if(p<0.02425) {
+            //lower tail
+            double q = Math.sqrt(-2 * Math.log(p));
+            return (((((c[0]*q + c[1])*q + c[2])*q + c[3])*q + c[4])*q + c[5]) /
+                    ((((d[0]*q + d[1])*q + d[2])*q + d[3])*q + 1);
+        }
+        if(p>1-0.02425) {
+            //upper tail is symmetric to the lower tail
+            return -normal(1-p);
+        }
+
+        double q = p - 0.5;
+        double r = q*q;
+        return (((((a[0]*r + a[1])*r + a[2])*r + a[3])*r + a[4])*r + a[5])*q /
+                (((((b[0]*r + b[1])*r + b[2])*r + b[3])*r + b[4])*r + 1);
+    }
+
+    /**
+     * Represents the statistics as a string in the form mean +- halfWidth using a 95% confidence level.
+     *
+     * @return The statistics as a string
+     */
+    @Override
+    public String toString() {
+        return String.format("%.2f +- %.2f", getMean(), getHalfWidth(0.95));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * File: ServiceTime.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: The distribution of the time a {@link Stage} takes to work on a single widget. A sample is drawn once
+ * per widget per stage so samplers must not allocate, and should do any expensive set up, such as taking logarithms or
+ * building tables, when they are created. Distributions are described by a short name so they can be chosen per stage in a
+ * {@link Topology} file or for the whole line on the command line:
+ *   uniform            mean +- range/2, the distribution of the assignment specification
+ *   exponential        exponential with the given mean, the range is ignored
+ *   erlang:k           the sum of k exponential phases with the given total mean, the range is ignored
+ *   lognormal          lognormal with the given mean and the range as its standard deviation
+ *   empirical:lo-hi:w,...
+ *                      a histogram, each bin lo-hi is picked with probability proportional to its weight w and the time
+ *                      is uniform within the bin. The edges of the bins are multiples of the mean so the same shape can be
+ *                      reused for any value of M, for example empirical:0.5-1:3,1-3:1
+ */
+public interface ServiceTime {
+
+    /**
+     * Draws the time taken to work on the next widget.
+     *
+     * @param random The random stream of the stage
+     * @return The service time, which is never negative
+     */
+    double sample(RandomStream random);
+
+    /**
+     * Draws the times of the next several widgets at once. The times must be exactly those that the same amount of calls
+     * to {@link #sample(RandomStream)} would give, in the same order, so batching never changes the simulation.
+     * Distributions whose samples are a simple transform of uniform numbers can override this to apply the transform
+     * to the whole block in one tight loop.
+     *
+     * @param random The random stream of the stage
+     * @param times Where to write the times
+     * @param count The amount of times to draw into the start of the array
+     */
+    default void fill(RandomStream random, double[] times, int count) {
+        for(int i=0;i<count;i++)
+            times[i] = sample(random);
+    }
+
+    /**
+     * @return The mean of the distribution
+     */
+    double getMean();
+
+    /**
+     * @return The shortest time a sample can take. A partitioned line uses this as the lookahead of each segment, see
+     *         {@link ParallelLine}
+     */
+    double getMinimum();
+
+    /**
+     * @return True if every sample on a {@link RandomStream#isPaired()} stream draws a fixed amount of uniform numbers
+     *         and grows with each of them, so a stream and its {@link RandomStream#antithetic()} copy give negatively
+     *         correlated times. Samplers that reject draws, like the {@link Ziggurat}, fall out of step with the copy
+     *         after the first rejection.
+     */
+    default boolean isAntithetic() {
+        return false;
+    }
+
+    /**
+     * Creates a distribution from its description.
+     *
+     * @param distribution The description of the distribution, see the description of this interface
+     * @param mean The mean of the stage, or the scale of an empirical distribution
+     * @param range The range of the stage
+     * @return The distribution
+     * @throws IllegalArgumentException if the description is not valid
+     */
+    static ServiceTime create(String distribution, double mean, double range) {
+        int colon = distribution.indexOf(':');
+        String name = colon<0 ? distribution : distribution.substring(0,colon);
+        String argument = colon<0 ? null : distribution.substring(colon+1);
+        if(argument==null && (name.equals("erlang") || name.equals("empirical")))
+            throw new IllegalArgumentException("The distribution "+name+" needs an argument, for example "+name+
+                    (name.equals("erlang") ? ":3" : ":0.5-1:3,1-3:1"));
+        if(argument!=null && !name.equals("erlang") && !name.equals("empirical"))
+            throw new IllegalArgumentException("The distribution "+name+" does not take an argument");
+
+        switch (name) {
+            case "uniform":
+                return new UniformServiceTime(mean,range);
+            case "exponential":
+                return new ExponentialServiceTime(mean);
+            case "erlang":
+                try {
+                    return new ErlangServiceTime(Integer.parseInt(argument),mean);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid amount of phases '"+argument+"'");
+                }
+            case "lognormal":
+                return new LognormalServiceTime(mean,range);
+            case "empirical":
+                return EmpiricalServiceTime.parse(argument,mean);
+            default:
+                throw new IllegalArgumentException("Unknown distribution '"+distribution+
+                        "' expected uniform, exponential, erlang:k, lognormal or empirical:lo-hi:w,...");
+        }
+    }
+}
@@ -1,11 +1,9 @@
-import java.util.Random;
-
 /**
  * File: Stage.java
  *
  * Author: Jacob Boyce
  * Course: SENG2200
- * Program Description: Abstract class that represents a production line stage. The stage has two main operations, pull and push. Pull takes a {@link Widget} from the previous
+ * Program Description: Abstract class that represents a production line stage. The stage has two main operations, pull and push. Pull takes a widget from the previous
  * {@link InterStageQueue}, processes it and after it has finished processing it move it into the next interstage queue. The stage is also required to collect important
  * statistics about itself. A stage can be in 1 of 3 states
  *   - Starved: The stage cannot work as there are no widgets to pull from
@@ -14,18 +12,21 @@ import java.util.Random;
  */
 public abstract class Stage {
 
-    private final double M; //Average Processing Time
-    private final double N; //Range of processing time
-    private final Random random;
+    private final ServiceTime serviceTime; //distribution of the processing time
+    private RandomStream random;
+    //processing times drawn ahead of time in blocks, null if the line does not batch them
+    private final double[] batch;
+    private int batchIndex;
     private InterStageQueue next;
     private InterStageQueue prev;
     private final ProductionLine line; //the line is required so that the stage can add jobs to the discrete event simulation
 
     private final String name;
+    private final int id; //index of the stage in the production line, used to schedule events
     private boolean blocked;
 
-    private Widget currentWidget;
-    private Job currentJob;
+    private int currentWidget; //the handle of the widget in the WidgetTable of the line, NONE if there is none
+    private double completionTime; //when the current widget is finished. Only meaningful while there is a widget
 
     private double blockedTime;
     private double blockedTimeStamp;
@@ -33,6 +34,11 @@ public abstract class Stage {
     private double workTime;
     private double workTimeStamp;
 
+    //the time spent working and blocked in each batch of the run, for the standard errors of the statistics
+    static final int WORKING = 0;
+    static final int BLOCKED = 1;
+    private BatchMeans batchMeans;
+
     /**
      * Creates a new stage
      *
@@ -44,9 +50,23 @@ public abstract class Stage {
      * @param name The name of the stage. This should be in the form of S[ordinal][parallel] for example s0a
      */
     public Stage(ProductionLine line ,InterStageQueue prev, InterStageQueue next, double m, double n, String name) {
-        this.M = m;
-        this.N = n;
-        this.random = new Random(System.nanoTime()); //seed random to nanoTime to ensure it is properly random
+        this(line,prev,next,new UniformServiceTime(m,n),name);
+    }
+
+    /**
+     * Creates a new stage
+     *
+     * @param prev The previous stage or null if this is the first stage
+     * @param next The next stage or null if this is the final stage
+     * @param serviceTime The distribution of the processing time
+     * @param line The production line this stage is apart of
+     * @param name The name of the stage. This should be in the form of S[ordinal][parallel] for example s0a
+     */
+    public Stage(ProductionLine line ,InterStageQueue prev, InterStageQueue next, ServiceTime serviceTime, String name) {
+        this.serviceTime = serviceTime;
+        this.random = line.nextStream(); //split from the line so replications are independent and repeatable
+        this.batch = line.getBatchSize()>0 ? new double[line.getBatchSize()] : null;
+        this.batchIndex = line.getBatchSize();
         this.next = null;
         this.prev = null;
         this.name = name;
@@ -58,7 +78,10 @@ public abstract class Stage {
         if(next!=null)
             next.addPrev(this);
         this.blocked = false;
+        this.currentWidget = WidgetTable.NONE;
         this.line = line;
+        this.batchMeans = new BatchMeans(2);
+        this.id = line.addStage(this);
     }
 
     /**
@@ -68,6 +91,13 @@ public abstract class Stage {
         return name;
     }
 
+    /**
+     * @return The id of the stage. Ids are given out in the order the stages are created starting from 0.
+     */
+    public int getId() {
+        return id;
+    }
+
     /**
      * Moves the currently worked on widget to the next {@link InterStageQueue}. If this is currently working
      * on a widget or is blocked, that is the next queue is full then this will do nothing. This method will then
@@ -75,23 +105,24 @@ public abstract class Stage {
      */
     public void push() {
         double currentTime = line.getCurrentTime();
-        if(currentWidget==null) //we have no widget to push
+        if(currentWidget==WidgetTable.NONE) //we have no widget to push
             return;
 
-        if(currentJob!=null) {
+        if(currentTime < completionTime) {
             //we are working
-            if(line.getCurrentTime() < currentJob.getCompletionTime())
-                return;
+            return;
         }
 
-        if(getNext()!=null && getNext().isFull()) {
+        if(getNext()!=null && !getNext().hasRoomFor(this)) {
             //we are blocked
             if(!blocked) {
                 blockedTimeStamp = currentTime;
                 //if we are blocked then work is over, calculate work time
                 workTime += (currentTime-workTimeStamp);
+                batchMeans.addInterval(workTimeStamp,currentTime,WORKING,1);
             }
             blocked = true;
+            getNext().addBlocked(this); //wait until the queue has room
             return;
         }
 
@@ -99,16 +130,17 @@ public abstract class Stage {
             //we were blocked, do not recalculate work time
             //calculate blocked time
             blockedTime += (currentTime - blockedTimeStamp);
+            batchMeans.addInterval(blockedTimeStamp,currentTime,BLOCKED,1);
             blocked = false;
         } else {
             //we were never blocked so work ended now
             workTime += (currentTime-workTimeStamp);
+            batchMeans.addInterval(workTimeStamp,currentTime,WORKING,1);
         }
 
 
-        Widget widget = currentWidget;
-        currentWidget = null;
-        currentJob = null;
+        int widget = currentWidget;
+        currentWidget = WidgetTable.NONE;
 
         //what the widget does will depend on the type
         pushWidget(widget);
@@ -117,12 +149,38 @@ public abstract class Stage {
         pull();
     }
 
+    /**
+     * Called by the production line after the queue this stage was waiting on has changed. A blocked stage tries to move
+     * its widget on and a starved stage tries to take a new one. If it still cannot it waits on the queue again.
+     */
+    public void wake() {
+        if(currentWidget!=WidgetTable.NONE) {
+            push();
+        } else {
+            pull();
+        }
+    }
+
+    /**
+     * @return True if the stage has finished its widget but cannot move it because the next queue is full.
+     */
+    public boolean isBlocked() {
+        return blocked;
+    }
+
+    /**
+     * @return True if the stage has no widget, so it is waiting on the previous queue.
+     */
+    public boolean isStarved() {
+        return currentWidget==WidgetTable.NONE;
+    }
+
     /**
      * Handles a widget which has been pushed. This is a polymorphic method that will vary depending on the stage.
      *
-     * @param widget The widget to push
+     * @param widget The handle of the widget to push
      */
-    protected abstract void pushWidget(Widget widget);
+    protected abstract void pushWidget(int widget);
 
     /**
      * Retrieves a widget so that it can be worked on. If this cannot retrieve a widget then the stage is considered starved. If a widget
@@ -130,47 +188,66 @@ public abstract class Stage {
      * will add a job to the event simulation to symbolise the time being spent.
      */
     public void pull() {
-        if(getPrev()!=null && getPrev().isEmpty()) {
-            //we are starved
+        if(currentWidget!=WidgetTable.NONE) {
+            //we are working or blocked, doesn't matter ignore pull
             return;
         }
 
-        if(currentWidget!=null) {
-            //we are working or blocked, doesn't matter ignore pull
+        if(getPrev()!=null && getPrev().isEmpty()) {
+            //we are starved, wait until the queue has a widget
+            getPrev().addStarved(this);
             return;
         }
 
         //get the widget being worked on
-        Widget widget = pullWidget();
-        widget.addStamp(this); //mark that the widget was created here for statistics
+        int widget = pullWidget();
+        WidgetTable widgets = line.getWidgets();
+        widgets.addStamp(widget,id); //mark that the widget was created here for statistics
+        widgets.setRoute(widget,line.getRoutes().extend(widgets.getRoute(widget),id));
         //do math to work out when the next job is
         double time = line.getCurrentTime() + calculateTime();
 
         workTimeStamp = line.getCurrentTime();
-        Job job = new Job(time,this);
         //add the job and mark the stage as worked
-        line.addJob(job);
+        line.addJob(time,id);
         currentWidget = widget;
-        currentJob = job;
+        completionTime = time;
+        if(getNext()!=null)
+            getNext().announce(this,widget,time);
     }
 
     /**
      * Handles the logic for pulling a widget. This provides the actual method as to how to pull it and this will
      * vary depending on the type of stage.
      *
-     * @return The retrieved widget.
+     * @return The handle of the retrieved widget.
      */
-    protected abstract Widget pullWidget();
+    protected abstract int pullWidget();
 
     /**
      * Calculates the amount of time it will take to complete a task. As this depends on a random
-     * variable it will change each time. The N value will greatly determine the range of values. This
-     * is a time delta, now the absolute completion time.
+     * variable it will change each time. The distribution of the stage determines the range of values. This
+     * is a time delta, now the absolute completion time. If the line batches processing times they are drawn a block
+     * at a time, which gives exactly the same times as drawing them one by one.
      *
      * @return The amount of time taken to complete a task.
      */
     private double calculateTime() {
-        return M + N * (random.nextDouble() - 0.5);
+        if(batch==null)
+            return serviceTime.sample(random);
+
+        if(batchIndex==batch.length) {
+            serviceTime.fill(random,batch,batch.length);
+            batchIndex = 0;
+        }
+        return batch[batchIndex++];
+    }
+
+    /**
+     * @return The distribution of the processing time
+     */
+    public ServiceTime getServiceTime() {
+        return serviceTime;
     }
 
     /**
@@ -187,6 +264,50 @@ public abstract class Stage {
         return prev;
     }
 
+    /**
+     * @return The production line this stage is a part of
+     */
+    protected ProductionLine getLine() {
+        return line;
+    }
+
+    /**
+     * @return The time spent working and blocked in each batch of the run, see {@link #WORKING} and {@link #BLOCKED}
+     */
+    public BatchMeans getBatchMeans() {
+        return batchMeans;
+    }
+
+    /**
+     * Takes a copy of everything about the stage that changes as the simulation runs, so an optimistic
+     * {@link ParallelLine} can roll the stage back.
+     *
+     * @return The saved state
+     */
+    State save() {
+        return new State(this);
+    }
+
+    /**
+     * Puts the stage back to a saved state. The state is copied, so it can be restored again later.
+     *
+     * @param state A state saved from this stage
+     */
+    void restore(State state) {
+        random = state.random.copy();
+        if(batch!=null)
+            System.arraycopy(state.batch,0,batch,0,batch.length);
+        batchIndex = state.batchIndex;
+        blocked = state.blocked;
+        currentWidget = state.currentWidget; //the widgets of the line are restored with it
+        completionTime = state.completionTime;
+        blockedTime = state.blockedTime;
+        blockedTimeStamp = state.blockedTimeStamp;
+        workTime = state.workTime;
+        workTimeStamp = state.workTimeStamp;
+        batchMeans = state.batchMeans.copy();
+    }
+
     /**
      * Represents the stage as a string. This presents the string as
      *   - Stage[name='name', currentWidget='', blocked='blocked']
@@ -194,7 +315,8 @@ public abstract class Stage {
      * @return The stage as a string
      */
     public String toString() {
-        return "Stage[name="+getName()+", currentWidget="+currentWidget+", blocked="+blocked+"]";
+        String widget = currentWidget==WidgetTable.NONE ? null : line.getWidgets().toString(currentWidget);
+        return "Stage[name="+getName()+", currentWidget="+widget+", blocked="+blocked+"]";
     }
 
     /**
@@ -225,9 +347,74 @@ public abstract class Stage {
      */
     public double getStarvationTime() {
         double realWorkTime = workTime;
-        if(currentWidget!=null) //we are working still
+        if(currentWidget!=WidgetTable.NONE) //we are working still
             realWorkTime += (line.getCompletionTime() - workTimeStamp);
-        return line.getCompletionTime() - realWorkTime - blockedTime;
+        return line.getMeasuredTime() - realWorkTime - blockedTime;
+    }
+
+    /**
+     * The time the stage has spent starved from the start of the statistics up to a time during the run, counting the
+     * widget it is working on or blocked with up to that time.
+     *
+     * @param time A time no earlier than the last job of the stage
+     * @return The starvation time so far
+     */
+    double getStarvationTime(double time) {
+        double work = workTime;
+        double block = blockedTime;
+        if(blocked)
+            block += time - blockedTimeStamp;
+        else if(currentWidget!=WidgetTable.NONE)
+            work += time - workTimeStamp;
+        return time - line.getWarmupTime() - work - block;
+    }
+
+    /**
+     * Forgets the time spent working and blocked so far, used to delete the warm-up of a run. A widget still being
+     * worked on or blocked is counted from the given time on.
+     *
+     * @param time The time the statistics start from
+     */
+    void resetStatistics(double time) {
+        workTime = 0;
+        blockedTime = 0;
+        batchMeans.reset(time);
+        if(currentWidget!=WidgetTable.NONE) {
+            workTimeStamp = time;
+            blockedTimeStamp = time;
+        }
+    }
+
+    /**
+     * The fields of a stage that change as the simulation runs, see {@link #save()}.
+     */
+    static class State {
+
+        private final RandomStream random;
+        private final double[] batch;
+        private final int batchIndex;
+        private final boolean blocked;
+        private final int currentWidget;
+        private final double completionTime;
+        private final double blockedTime;
+        private final double blockedTimeStamp;
+        private final double workTime;
+        private final double workTimeStamp;
+        private final BatchMeans batchMeans;
+
+        private State(Stage stage) {
+            this.random = stage.random.copy();
+            this.batch = stage.batch==null ? null : stage.batch.clone();
+            this.batchIndex = stage.batchIndex;
+            this.blocked = stage.blocked;
+            this.currentWidget = stage.currentWidget;
+            this.completionTime = stage.completionTime;
+            this.blockedTime = stage.blockedTime;
+            this.blockedTimeStamp = stage.blockedTimeStamp;
+            this.workTime = stage.workTime;
+            this.workTimeStamp = stage.workTimeStamp;
+            this.batchMeans = stage.batchMeans.copy();
+        }
     }
 
 
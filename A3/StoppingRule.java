@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+/**
+ * File: StoppingRule.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Decides when a single run has been simulated for long enough. The line is observed at fixed
+ * intervals, and each observation gives the running total of every metric along with what it is a rate of, for example
+ * the widgets finished so far and the time passed. The run so far is cut into a fixed amount of batches of consecutive
+ * observations and each metric is worked out over each batch. For a long enough batch the values of the batches are
+ * close to independent, so their mean and 95% confidence interval are those of the metric, and the run stops as soon as
+ * the half width of every chosen metric is within the target fraction of its mean.
+ *
+ * The metrics are
+ *   - throughput, the widgets finished per unit of time
+ *   - starvation, the fraction of time the stages spend starved, over every stage
+ *   - queue time, the average time a widget spends in a queue, over every queue
+ */
+public class StoppingRule {
+
+    public static final int THROUGHPUT = 0;
+    public static final int STARVATION = 1;
+    public static final int QUEUE_TIME = 2;
+    private static final String[] NAMES = {"throughput","starvation","queue time"};
+
+    private static final int BATCHES = 20;
+    private static final int MIN_OBSERVATIONS = 10*BATCHES; //observations needed before the run may stop
+
+    private final double precision;
+    private final boolean[] metrics; //which metrics must be precise for the run to stop
+    //the running totals of every metric at each observation and what each is a rate of
+    private double[][] totals;
+    private double[][] weights;
+    private int observations;
+    private final SampleStatistics[] estimates; //of the last check
+    private boolean precise;
+
+    /**
+     * @param precision The largest half width of the 95% confidence interval of each metric, as a fraction of its mean
+     * @param metrics The metrics that must reach the precision, any of THROUGHPUT, STARVATION and QUEUE_TIME
+     * @throws IllegalArgumentException if the precision is not positive or no metrics are given
+     */
+    public StoppingRule(double precision, int... metrics) {
+        if(!(precision>0))
+            throw new IllegalArgumentException("The precision must be positive");
+        if(metrics.length==0)
+            throw new IllegalArgumentException("The run needs at least one metric to stop on");
+        this.precision = precision;
+        this.metrics = new boolean[NAMES.length];
+        for(int metric : metrics)
+            this.metrics[metric] = true;
+        this.totals = new double[NAMES.length][256];
+        this.weights = new double[NAMES.length][256];
+        this.estimates = new SampleStatistics[NAMES.length];
+    }
+
+    /**
+     * Parses a comma separated list of metric names such as throughput,queue.
+     *
+     * @param names The names, each one of throughput, starvation or queue
+     * @return The metrics
+     * @throws IllegalArgumentException if a name is not a metric
+     */
+    public static int[] parseMetrics(String names) {
+        String[] parts = names.split(",");
+        int[] metrics = new int[parts.length];
+        for(int i=0;i<parts.length;i++) {
+            switch (parts[i].trim()) {
+                case "throughput":
+                    metrics[i] = THROUGHPUT;
+                    break;
+                case "starvation":
+                    metrics[i] = STARVATION;
+                    break;
+                case "queue":
+                    metrics[i] = QUEUE_TIME;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown metric '"+parts[i]+"' expected throughput, starvation or queue");
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Adds the next observation of the run.
+     *
+     * @param totals The running total of each metric, indexed by metric
+     * @param weights What each total is a rate of, for example the time passed for throughput
+     * @return True if every chosen metric is now precise enough for the run to stop
+     */
+    public boolean add(double[] totals, double[] weights) {
+        if(observations==this.totals[0].length) {
+            for(int metric=0;metric<NAMES.length;metric++) {
+                this.totals[metric] = Arrays.copyOf(this.totals[metric],observations*2);
+                this.weights[metric] = Arrays.copyOf(this.weights[metric],observations*2);
+            }
+        }
+        for(int metric=0;metric<NAMES.length;metric++) {
+            this.totals[metric][observations] = totals[metric];
+            this.weights[metric][observations] = weights[metric];
+        }
+        observations++;
+        if(observations<MIN_OBSERVATIONS)
+            return false;
+
+        precise = true;
+        for(int metric=0;metric<NAMES.length;metric++) {
+            if(!metrics[metric])
+                continue;
+            estimates[metric] = estimate(metric);
+            if(!isPrecise(estimates[metric]))
+                precise = false;
+        }
+        return precise;
+    }
+
+    /**
+     * @return True if the last observation was precise enough for the run to stop
+     */
+    public boolean isPrecise() {
+        return precise;
+    }
+
+    /**
+     * @return The metric over each batch of the observations so far
+     */
+    private SampleStatistics estimate(int metric) {
+        SampleStatistics batches = new SampleStatistics();
+        double[] total = totals[metric];
+        double[] weight = weights[metric];
+        int last = observations-1;
+        for(int batch=0;batch<BATCHES;batch++) {
+            int from = (int) ((long) batch*last/BATCHES);
+            int to = (int) ((long) (batch+1)*last/BATCHES);
+            double width = weight[to]-weight[from];
+            if(width>0)
+                batches.add((total[to]-total[from])/width);
+        }
+        return batches;
+    }
+
+    private boolean isPrecise(SampleStatistics estimate) {
+        //a batch where nothing happened says nothing about the metric
+        return estimate.getCount()==BATCHES && estimate.getHalfWidth(0.95)<=precision*Math.abs(estimate.getMean());
+    }
+
+    /**
+     * Prints the estimate of each chosen metric at the last check, or nothing if the run ended before the first check.
+     */
+    public void print() {
+        for(int metric=0;metric<NAMES.length;metric++) {
+            if(estimates[metric]==null)
+                continue;
+            SampleStatistics estimate = estimates[metric];
+            System.out.format("  %-15s%.6f +- %.6f (%.2f%%)%n",NAMES[metric],estimate.getMean(),estimate.getHalfWidth(0.95),
+                    100*estimate.getHalfWidth(0.95)/Math.abs(estimate.getMean()));
+        }
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * File: Sweep.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Runs a parameter sweep over every combination of M, N and qMax inside of a single JVM. Every
+ * replication of every scenario is its own task on a work-stealing {@link ForkJoinPool}, so long scenarios do not hold
+ * up short ones. As soon as the last replication of a scenario finishes, the scenario is summarised and written as one row
+ * of CSV. Rows are therefore written in the order scenarios finish, not the order they were listed.
+ *
+ * By default every scenario uses the same replication streams so that the differences between scenarios are not hidden
+ * by the differences between their random streams, see {@link LineOptions#setVariance(String)}.
+ */
+public class Sweep {
+
+    private final LineOptions options;
+    private final int[] mValues;
+    private final int[] nValues;
+    private final int[] qMaxValues;
+    private final int replications;
+    private final long seed;
+
+    private boolean headerWritten;
+    private volatile RuntimeException failure; //the first replication to fail, rethrown once the pool is idle
+
+    /**
+     * Creates a new sweep.
+     *
+     * @param options The options every scenario is built from. Only M, N and qMax are replaced.
+     * @param mValues Every value of M to simulate
+     * @param nValues Every value of N to simulate
+     * @param qMaxValues Every value of qMax to simulate. None of these may be negative.
+     * @param replications The amount of replications of each scenario. This must be positive.
+     * @param seed The master seed from which the stream of each replication is split
+     */
+    public Sweep(LineOptions options, int[] mValues, int[] nValues, int[] qMaxValues, int replications, long seed) {
+        if(replications<=0)
+            throw new IllegalArgumentException("There must be at least one replication");
+        for(int qMax : qMaxValues) {
+            if(qMax<0)
+                throw new IllegalArgumentException("The queue cannot have a negative capacity");
+        }
+
+        this.options = options;
+        this.mValues = mValues;
+        this.nValues = nValues;
+        this.qMaxValues = qMaxValues;
+        this.replications = replications;
+        this.seed = seed;
+    }
+
+    /**
+     * Parses a list of values. A list is either comma separated values, for example 5,10,20 or an inclusive range
+     * in the form start:end:step, for example 0:20:5. A range without a step has a step of 1. Both can be mixed, for
+     * example 0:4,10,20.
+     *
+     * @param values The list of values
+     * @return The values in the order they were listed
+     * @throws IllegalArgumentException if the list cannot be parsed
+     */
+    public static int[] parseValues(String values) {
+        List<Integer> parsed = new ArrayList<>();
+        try {
+            for (String item : values.split(",")) {
+                String[] range = item.trim().split(":");
+                if (range.length == 1) {
+                    parsed.add(Integer.parseInt(range[0]));
+                    continue;
+                }
+
+                if (range.length > 3)
+                    throw new IllegalArgumentException("Invalid range '" + item + "' expected start:end:step");
+                int start = Integer.parseInt(range[0]);
+                int end = Integer.parseInt(range[1]);
+                int step = range.length == 3 ? Integer.parseInt(range[2]) : 1;
+                if (step <= 0)
+                    throw new IllegalArgumentException("The step of the range '" + item + "' must be positive");
+                for (int value = start; value <= end; value += step)
+                    parsed.add(value);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid list of values '"+values+"'",e);
+        }
+
+        int[] result = new int[parsed.size()];
+        for(int i=0;i<result.length;i++)
+            result[i] = parsed.get(i);
+        return result;
+    }
+
+    /**
+     * Runs the sweep on a new work-stealing pool with one thread per available processor.
+     *
+     * @param out Where to write the CSV rows. This is flushed after every row but is not closed.
+     * @throws IllegalArgumentException if the line of any scenario cannot be built, before any scenario is run
+     * @throws IllegalStateException if the rows could not be written
+     */
+    public void run(Writer out) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            run(pool,out);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the sweep on the given pool and blocks until every scenario has been written.
+     *
+     * @param pool The pool to run every replication on
+     * @param out Where to write the CSV rows. This is flushed after every row but is not closed.
+     * @throws IllegalArgumentException if the line of any scenario cannot be built, before any scenario is run
+     * @throws IllegalStateException if the rows could not be written
+     */
+    public void run(ForkJoinPool pool, Writer out) {
+        //build every scenario first, so a bad scenario is found before the rest of the grid has run
+        for(int M : mValues) {
+            for(int N : nValues) {
+                for(int qMax : qMaxValues)
+                    options.withScenario(M,N,qMax).check();
+            }
+        }
+
+        PrintWriter writer = new PrintWriter(out);
+        int scenarios = mValues.length * nValues.length * qMaxValues.length;
+        //with common streams every scenario reuses the first set of streams, otherwise each scenario has its own set
+        RandomStream[] streams = RandomStream.replications(seed,options.isCommon() ? replications : scenarios*replications);
+        int first = 0; //the index of the first stream of the current scenario
+        for(int M : mValues) {
+            for(int N : nValues) {
+                for(int qMax : qMaxValues) {
+                    Scenario scenario = new Scenario(options.withScenario(M,N,qMax),replications);
+                    for(int i=0;i<replications;i++) {
+                        final int replication = i;
+                        final RandomStream stream = streams[first + i];
+                        pool.execute(() -> {
+                            try {
+                                scenario.complete(replication, Replications.runReplication(scenario.options,stream),writer);
+                            } catch (RuntimeException e) {
+                                failure = e;
+                            }
+                        });
+                    }
+                    if(!options.isCommon())
+                        first += replications;
+                }
+            }
+        }
+
+        pool.awaitQuiescence(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        if(failure!=null)
+            throw failure;
+        if(writer.checkError())
+            throw new IllegalStateException("Could not write the results of the sweep");
+    }
+
+    /**
+     * Writes the summary of a finished scenario as a row. The header is written before the first row, as the names of the
+     * columns depend on the stages and queues of the line.
+     *
+     * @param scenario The finished scenario
+     * @param summary The merged replications of the scenario
+     * @param writer Where to write the row
+     */
+    private synchronized void writeRow(Scenario scenario, ReplicationSummary summary, PrintWriter writer) {
+        LineStatistics layout = summary.getLayout();
+        if(!headerWritten) {
+            StringBuilder header = new StringBuilder("M,N,qMax,replications");
+            for(int i=0;i<layout.getStageCount();i++) {
+                appendHeader(header,layout.getStageName(i)+"_work");
+                appendHeader(header,layout.getStageName(i)+"_starve");
+                appendHeader(header,layout.getStageName(i)+"_block");
+            }
+            for(int i=0;i<layout.getQueueCount();i++) {
+                appendHeader(header,layout.getQueueName(i)+"_avgTime");
+                appendHeader(header,layout.getQueueName(i)+"_avgWgts");
+            }
+            for(int i=0;i<layout.getPathCount();i++) {
+                appendHeader(header,layout.getPathName(i).replace(" ",""));
+            }
+            writer.println(header);
+            headerWritten = true;
+        }
+
+        StringBuilder row = new StringBuilder();
+        row.append(scenario.options.getM()).append(',').append(scenario.options.getN()).append(',')
+                .append(scenario.options.getQMax()).append(',').append(replications);
+        for(int i=0;i<layout.getStageCount();i++) {
+            appendValue(row,summary.getWorkPercentage(i));
+            appendValue(row,summary.getStarvationTime(i));
+            appendValue(row,summary.getBlockedTime(i));
+        }
+        for(int i=0;i<layout.getQueueCount();i++) {
+            appendValue(row,summary.getAverageTimeSpent(i));
+            appendValue(row,summary.getAverageWidgets(i));
+        }
+        for(int i=0;i<layout.getPathCount();i++) {
+            appendValue(row,summary.getWidgets(i));
+        }
+        writer.println(row);
+        writer.flush();
+    }
+
+    private static void appendHeader(StringBuilder header, String column) {
+        header.append(',').append(column).append("_mean,").append(column).append("_hw");
+    }
+
+    private static void appendValue(StringBuilder row, SampleStatistics statistics) {
+        double halfWidth = statistics.getHalfWidth(0.95);
+        row.append(String.format(Locale.ROOT,",%.4f,%s",statistics.getMean(),
+                Double.isInfinite(halfWidth) ? "" : String.format(Locale.ROOT,"%.4f",halfWidth)));
+    }
+
+    /**
+     * A single combination of M, N and qMax. This collects the results of its replications as they finish and writes
+     * the row when the last one arrives.
+     */
+    private class Scenario {
+
+        private final LineOptions options;
+        private final LineStatistics[] results;
+        private final AtomicInteger remaining;
+
+        private Scenario(LineOptions options, int replications) {
+            this.options = options;
+            this.results = new LineStatistics[replications];
+            this.remaining = new AtomicInteger(replications);
+        }
+
+        /**
+         * Stores the result of a replication, and if it was the last one merges the replications in order and
+         * writes the row.
+         */
+        private void complete(int replication, LineStatistics statistics, PrintWriter writer) {
+            results[replication] = statistics;
+            //the atomic decrement also publishes every stored result to the thread that finishes last
+            if(remaining.decrementAndGet()!=0)
+                return;
+
+            ReplicationSummary summary = new ReplicationSummary(results[0]);
+            for(LineStatistics result : results)
+                summary.add(result);
+            writeRow(this,summary,writer);
+        }
+    }
+}
@@ -0,0 +1,498 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * File: Topology.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: The layout of a production line, read from a text file and compiled into flat arrays. Stages and
+ * queues are numbered in the order they are declared and every link is stored as an index, so the layout can be built
+ * into a {@link ProductionLine} for any values of M, N and qMax, and so other parts of the program can reason about the
+ * graph without walking objects.
+ *
+ * The file has one declaration per line, anything after a # is a comment.
+ *   queue [name] [capacity]
+ *   stage [create|process|final] [name] [prev queue] [next queue] [mean] [range] [distribution]
+ * The distribution is optional, see {@link ServiceTime} for the names, and a stage without one uses the distribution the
+ * line is built with, uniform by default. A stage that does not have a previous or next queue uses - in its place.
+ * Create stages have no previous queue, final stages have no next queue and move their widgets to the warehouse.
+ * Several stages may share a queue, which is how parallel stations (fan-out) and merges (fan-in) are described. Queues
+ * must be declared before the stages that use them.
+ *
+ * Capacities are a number or a multiple of qMax such as qMax or 2qMax. Means and ranges are a number or a multiple of M or
+ * N such as M, 2M, 0.5N or 3*N.
+ */
+public class Topology {
+
+    /**
+     * The line of the assignment specification.
+     */
+    public static final String ASSIGNMENT =
+            "queue Q01 qMax\n" +
+            "queue Q12 qMax\n" +
+            "queue Q23 qMax\n" +
+            "queue Q34 qMax\n" +
+            "queue Q45 qMax\n" +
+            "queue Q56 qMax\n" +
+            "stage create  S0a -   Q01 2M 2N\n" +
+            "stage create  S0b -   Q01 M  N\n" +
+            "stage process S1  Q01 Q12 M  N\n" +
+            "stage process S2  Q12 Q23 M  N\n" +
+            "stage process S3a Q23 Q34 2M 2N\n" +
+            "stage process S3b Q23 Q34 2M 2N\n" +
+            "stage process S4  Q34 Q45 M  N\n" +
+            "stage process S5a Q45 Q56 2M 2N\n" +
+            "stage process S5b Q45 Q56 2M 2N\n" +
+            "stage final   S6  Q56 -   M  N\n";
+
+    public static final int CREATE = 0;
+    public static final int PROCESS = 1;
+    public static final int FINAL = 2;
+
+    /**
+     * Marks that a stage has no previous or next queue.
+     */
+    public static final int NONE = -1;
+
+    private static Topology assignment;
+
+    //queues, indexed by queue id
+    private final String[] queueNames;
+    private final Value[] capacities;
+    //the stages on either side of each queue, indexed by queue id
+    private final int[][] producers;
+    private final int[][] consumers;
+
+    //stages, indexed by stage id
+    private final String[] stageNames;
+    private final int[] kinds;
+    private final int[] prev;
+    private final int[] next;
+    private final Value[] means;
+    private final Value[] ranges;
+    private final String[] distributions; //null where the stage uses the distribution of the line
+
+    private Topology(List<String> queueNames, List<Value> capacities, List<String> stageNames, List<Integer> kinds,
+                     List<Integer> prev, List<Integer> next, List<Value> means, List<Value> ranges,
+                     List<String> distributions) {
+        this.queueNames = queueNames.toArray(new String[0]);
+        this.capacities = capacities.toArray(new Value[0]);
+        this.stageNames = stageNames.toArray(new String[0]);
+        this.means = means.toArray(new Value[0]);
+        this.ranges = ranges.toArray(new Value[0]);
+        this.distributions = distributions.toArray(new String[0]);
+        this.kinds = toArray(kinds);
+        this.prev = toArray(prev);
+        this.next = toArray(next);
+        this.producers = link(this.next,this.queueNames.length);
+        this.consumers = link(this.prev,this.queueNames.length);
+    }
+
+    /**
+     * @return The line of the assignment specification
+     */
+    public static synchronized Topology assignment() {
+        if(assignment==null)
+            assignment = parse(new StringReader(ASSIGNMENT));
+        return assignment;
+    }
+
+    /**
+     * Reads a topology from a file.
+     *
+     * @param path The path of the file
+     * @return The compiled topology
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file is not a valid topology
+     */
+    public static Topology load(String path) throws IOException {
+        try (Reader reader = new FileReader(path)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Reads a topology. See the description of the class for the format.
+     *
+     * @param reader Where to read the topology from. This is not closed.
+     * @return The compiled topology
+     * @throws IllegalArgumentException if the text is not a valid topology or cannot be read
+     */
+    public static Topology parse(Reader reader) {
+        List<String> queueNames = new ArrayList<>();
+        List<Value> capacities = new ArrayList<>();
+        Map<String,Integer> queueIds = new HashMap<>();
+        List<String> stageNames = new ArrayList<>();
+        List<Integer> kinds = new ArrayList<>();
+        List<Integer> prev = new ArrayList<>();
+        List<Integer> next = new ArrayList<>();
+        List<Value> means = new ArrayList<>();
+        List<Value> ranges = new ArrayList<>();
+        List<String> distributions = new ArrayList<>();
+        Map<String,Integer> stageIds = new HashMap<>();
+
+        BufferedReader lines = new BufferedReader(reader);
+        int lineNumber = 0;
+        try {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                int comment = line.indexOf('#');
+                if (comment >= 0)
+                    line = line.substring(0, comment);
+                line = line.trim();
+                if (line.isEmpty())
+                    continue;
+
+                String[] tokens = line.split("\\s+");
+                switch (tokens[0]) {
+                    case "queue":
+                        expectTokens(tokens, 3, "queue [name] [capacity]");
+                        if (queueIds.containsKey(tokens[1]))
+                            throw new IllegalArgumentException("Queue " + tokens[1] + " is declared twice");
+                        queueIds.put(tokens[1], queueNames.size());
+                        queueNames.add(tokens[1]);
+                        capacities.add(Value.parse(tokens[2], "qMax"));
+                        break;
+                    case "stage":
+                        if(tokens.length==8) {
+                            ServiceTime.create(tokens[7],1,1); //only to check the distribution is valid
+                            distributions.add(tokens[7]);
+                        } else {
+                            expectTokens(tokens, 7, "stage [create|process|final] [name] [prev queue] [next queue] [mean] [range] [distribution]");
+                            distributions.add(null);
+                        }
+                        if (stageIds.containsKey(tokens[2]))
+                            throw new IllegalArgumentException("Stage " + tokens[2] + " is declared twice");
+                        int kind = parseKind(tokens[1]);
+                        int prevQueue = findQueue(queueIds, tokens[3]);
+                        int nextQueue = findQueue(queueIds, tokens[4]);
+                        if ((kind == CREATE) != (prevQueue == NONE))
+                            throw new IllegalArgumentException("Only create stages have no previous queue");
+                        if ((kind == FINAL) != (nextQueue == NONE))
+                            throw new IllegalArgumentException("Only final stages have no next queue");
+                        stageIds.put(tokens[2], stageNames.size());
+                        stageNames.add(tokens[2]);
+                        kinds.add(kind);
+                        prev.add(prevQueue);
+                        next.add(nextQueue);
+                        means.add(Value.parse(tokens[5], "M", "N"));
+                        ranges.add(Value.parse(tokens[6], "M", "N"));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown declaration '" + tokens[0] + "' expected queue or stage");
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Line "+lineNumber+": "+e.getMessage(),e);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read the topology",e);
+        }
+
+        Topology topology = new Topology(queueNames,capacities,stageNames,kinds,prev,next,means,ranges,distributions);
+        topology.validate();
+        return topology;
+    }
+
+    /**
+     * Checks the line can actually run, every queue needs a stage to fill it and a stage to empty it and a line needs at
+     * least one stage that creates widgets.
+     */
+    private void validate() {
+        for(int queue=0;queue<queueNames.length;queue++) {
+            if(producers[queue].length==0)
+                throw new IllegalArgumentException("Queue "+queueNames[queue]+" has no stage before it");
+            if(consumers[queue].length==0)
+                throw new IllegalArgumentException("Queue "+queueNames[queue]+" has no stage after it");
+        }
+
+        boolean create = false;
+        for(int kind : kinds)
+            create |= kind==CREATE;
+        if(!create)
+            throw new IllegalArgumentException("The line has no create stage");
+    }
+
+    /**
+     * Builds the line described by this topology. Queues are created first, then stages in the order they were declared
+     * so that the id of every stage and queue matches its index in this topology.
+     *
+     * @param line The empty line to build into
+     * @param M The average production time
+     * @param N The range of production times
+     * @param qMax The maximum capacity of the queues. This must not be negative
+     */
+    public void build(ProductionLine line, int M, int N, int qMax) {
+        build(line,M,N,qMax,"uniform");
+    }
+
+    /**
+     * Builds the line described by this topology. Queues are created first, then stages in the order they were declared
+     * so that the id of every stage and queue matches its index in this topology.
+     *
+     * @param line The empty line to build into
+     * @param M The average production time
+     * @param N The range of production times
+     * @param qMax The maximum capacity of the queues. This must not be negative
+     * @param distribution The distribution of every stage that does not name its own, see {@link ServiceTime}
+     */
+    public void build(ProductionLine line, int M, int N, int qMax, String distribution) {
+        build(new ProductionLine[]{line},new int[stageNames.length],M,N,qMax,distribution);
+    }
+
+    /**
+     * Builds the line described by this topology cut into segments, see {@link ParallelLine}. Each queue belongs to the
+     * segment of the stages after it, and a queue with stages before it in another segment is built as a
+     * {@link BoundaryQueue}. Within each segment the stages and queues are numbered in the order of this topology.
+     *
+     * @param lines The empty segments to build into
+     * @param segments The index of the segment of each stage. Every stage after a queue must be in the same segment.
+     * @param M The average production time
+     * @param N The range of production times
+     * @param qMax The maximum capacity of the queues. This must not be negative
+     * @param distribution The distribution of every stage that does not name its own, see {@link ServiceTime}
+     */
+    public void build(ProductionLine[] lines, int[] segments, int M, int N, int qMax, String distribution) {
+        if(qMax<0)
+            throw new IllegalArgumentException("The queue cannot have a negative capacity");
+
+        InterStageQueue[] queues = new InterStageQueue[queueNames.length];
+        for(int queue=0;queue<queues.length;queue++) {
+            int capacity = (int) Math.round(capacities[queue].evaluate(qMax,0));
+            int segment = segments[consumers[queue][0]];
+            int before = segments[producers[queue][0]];
+            for(int stage : consumers[queue]) {
+                if(segments[stage]!=segment)
+                    throw new IllegalArgumentException("The stages after queue "+queueNames[queue]+" are in different segments");
+            }
+            for(int stage : producers[queue]) {
+                if(segments[stage]!=before)
+                    throw new IllegalArgumentException("The stages before queue "+queueNames[queue]+" are in different segments");
+            }
+            if(before==segment)
+                queues[queue] = new InterStageQueue(lines[segment],queueNames[queue],capacity);
+            else
+                queues[queue] = new BoundaryQueue(lines[segment],lines[before],queueNames[queue],capacity);
+        }
+
+        for(int stage=0;stage<stageNames.length;stage++) {
+            ProductionLine line = lines[segments[stage]];
+            double mean = means[stage].evaluate(M,N);
+            double range = ranges[stage].evaluate(M,N);
+            ServiceTime serviceTime = ServiceTime.create(distributions[stage]!=null ? distributions[stage] : distribution,mean,range);
+            switch (kinds[stage]) {
+                case CREATE:
+                    new CreationalStage(line,queues[next[stage]],serviceTime,stageNames[stage]);
+                    break;
+                case PROCESS:
+                    new ProcessingStage(line,queues[prev[stage]],queues[next[stage]],serviceTime,stageNames[stage]);
+                    break;
+                default:
+                    new FinalStage(line,line.getWarehouse(),queues[prev[stage]],serviceTime,stageNames[stage]);
+                    break;
+            }
+        }
+    }
+
+    public int getStageCount() {
+        return stageNames.length;
+    }
+
+    public int getQueueCount() {
+        return queueNames.length;
+    }
+
+    public String getStageName(int stage) {
+        return stageNames[stage];
+    }
+
+    public String getQueueName(int queue) {
+        return queueNames[queue];
+    }
+
+    /**
+     * @param stage The id of a stage
+     * @return The distribution the stage names, or null if it uses the distribution of the line
+     */
+    public String getDistribution(int stage) {
+        return distributions[stage];
+    }
+
+    /**
+     * @param stage The id of a stage
+     * @return One of {@link #CREATE}, {@link #PROCESS} or {@link #FINAL}
+     */
+    public int getKind(int stage) {
+        return kinds[stage];
+    }
+
+    /**
+     * @param stage The id of a stage
+     * @return The id of the queue before the stage, or {@link #NONE}
+     */
+    public int getPrev(int stage) {
+        return prev[stage];
+    }
+
+    /**
+     * @param stage The id of a stage
+     * @return The id of the queue after the stage, or {@link #NONE}
+     */
+    public int getNext(int stage) {
+        return next[stage];
+    }
+
+    /**
+     * @param queue The id of a queue
+     * @return The ids of the stages that put widgets into the queue. This must not be modified.
+     */
+    public int[] getProducers(int queue) {
+        return producers[queue];
+    }
+
+    /**
+     * @param queue The id of a queue
+     * @return The ids of the stages that take widgets from the queue. This must not be modified.
+     */
+    public int[] getConsumers(int queue) {
+        return consumers[queue];
+    }
+
+    /**
+     * @param name The name of a stage
+     * @return The id of the stage, or {@link #NONE} if there is no stage with the name
+     */
+    public int findStage(String name) {
+        for(int stage=0;stage<stageNames.length;stage++) {
+            if(stageNames[stage].equals(name))
+                return stage;
+        }
+        return NONE;
+    }
+
+    /**
+     * Inverts the queue of each stage into the stages of each queue.
+     *
+     * @param queueOfStage The queue on one side of each stage
+     * @param queueCount The amount of queues
+     * @return The stages on that side of each queue
+     */
+    private static int[][] link(int[] queueOfStage, int queueCount) {
+        int[] counts = new int[queueCount];
+        for(int queue : queueOfStage) {
+            if(queue!=NONE)
+                counts[queue]++;
+        }
+
+        int[][] stages = new int[queueCount][];
+        for(int queue=0;queue<queueCount;queue++)
+            stages[queue] = new int[counts[queue]];
+
+        int[] filled = new int[queueCount];
+        for(int stage=0;stage<queueOfStage.length;stage++) {
+            int queue = queueOfStage[stage];
+            if(queue!=NONE)
+                stages[queue][filled[queue]++] = stage;
+        }
+        return stages;
+    }
+
+    private static void expectTokens(String[] tokens, int count, String usage) {
+        if(tokens.length!=count)
+            throw new IllegalArgumentException("Expected "+usage);
+    }
+
+    private static int parseKind(String kind) {
+        switch (kind) {
+            case "create":
+                return CREATE;
+            case "process":
+                return PROCESS;
+            case "final":
+                return FINAL;
+            default:
+                throw new IllegalArgumentException("Unknown stage kind '"+kind+"' expected create, process or final");
+        }
+    }
+
+    private static int findQueue(Map<String,Integer> queueIds, String name) {
+        if(name.equals("-"))
+            return NONE;
+        Integer queue = queueIds.get(name);
+        if(queue==null)
+            throw new IllegalArgumentException("Unknown queue "+name);
+        return queue;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for(int i=0;i<array.length;i++)
+            array[i] = list.get(i);
+        return array;
+    }
+
+    /**
+     * A number that may be a multiple of a parameter of the line, for example 2M. This is stored as the multiple and the index
+     * of the parameter so it can be evaluated for any values of the parameters.
+     */
+    private static class Value {
+
+        private final double multiple;
+        private final int parameter; //-1 for a plain number, otherwise the index of the parameter
+
+        private Value(double multiple, int parameter) {
+            this.multiple = multiple;
+            this.parameter = parameter;
+        }
+
+        /**
+         * Parses a value such as 1500, M, 2M, 0.5*N or 2qMax.
+         *
+         * @param text The value
+         * @param parameters The names of the parameters the value may be a multiple of
+         * @return The parsed value
+         */
+        private static Value parse(String text, String... parameters) {
+            for(int i=0;i<parameters.length;i++) {
+                if(!text.endsWith(parameters[i]))
+                    continue;
+
+                String multiple = text.substring(0,text.length()-parameters[i].length());
+                if(multiple.endsWith("*"))
+                    multiple = multiple.substring(0,multiple.length()-1);
+                return new Value(multiple.isEmpty() ? 1 : parseNumber(multiple,text),i);
+            }
+            return new Value(parseNumber(text,text),-1);
+        }
+
+        private static double parseNumber(String number, String text) {
+            try {
+                double value = Double.parseDouble(number);
+                if(value<0 || Double.isNaN(value) || Double.isInfinite(value))
+                    throw new IllegalArgumentException("Value "+text+" must be a non negative number");
+                return value;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value '"+text+"'");
+            }
+        }
+
+        private double evaluate(double first, double second) {
+            switch (parameter) {
+                case 0:
+                    return multiple*first;
+                case 1:
+                    return multiple*second;
+                default:
+                    return multiple;
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * File: UniformServiceTime.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Service times uniform on mean +- range/2, the distribution of the assignment specification.
+ */
+public class UniformServiceTime implements ServiceTime {
+
+    private final double mean;
+    private final double range;
+
+    /**
+     * @param mean The average service time
+     * @param range The width of the interval of service times. This must not be more than twice the mean.
+     */
+    public UniformServiceTime(double mean, double range) {
+        this.mean = mean;
+        this.range = range;
+    }
+
+    @Override
+    public double sample(RandomStream random) {
+        return mean + range * (random.nextDouble() - 0.5);
+    }
+
+    /**
+     * Draws the uniform numbers first, then scales the whole block in a separate loop with no calls in it, which the JIT
+     * can compile to vector instructions.
+     */
+    @Override
+    public void fill(RandomStream random, double[] times, int count) {
+        for(int i=0;i<count;i++)
+            times[i] = random.nextDouble();
+        for(int i=0;i<count;i++)
+            times[i] = mean + range*(times[i] - 0.5); //the same expression as sample so the results match exactly
+    }
+
+    @Override
+    public double getMean() {
+        return mean;
+    }
+
+    @Override
+    public double getMinimum() {
+        return Math.max(0,mean - range/2);
+    }
+
+    /**
+     * @return True, every sample is one uniform number scaled by a positive range, so the time rises with it
+     */
+    @Override
+    public boolean isAntithetic() {
+        return true;
+    }
+}
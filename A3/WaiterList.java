@@ -0,0 +1,124 @@
+import java.util.Arrays;
+
+/**
+ * File: WaiterList.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: The stages waiting on one side of an {@link InterStageQueue}, either the stages before it which are
+ * blocked because it is full or the stages after it which are starved because it is empty. When the queue gains a slot or a
+ * widget it only wakes a single waiter, chosen by the order of the list, instead of trying every stage beside it. A woken
+ * stage that finds the slot or widget already taken simply waits again.
+ *
+ * A list never holds more than the stages on one side of a queue so it is kept as a plain array.
+ */
+public class WaiterList {
+
+    public static final int FIFO = 0; //the stage which has waited the longest is woken first
+    public static final int LIFO = 1; //the stage which started waiting most recently is woken first
+    public static final int ID = 2; //the stage with the lowest id is woken first, the order the stages were originally tried in
+
+    private final int order;
+    private Stage[] waiters;
+    private int size;
+
+    /**
+     * Creates a new empty list.
+     *
+     * @param order The order waiters are woken in, one of {@link #FIFO}, {@link #LIFO} or {@link #ID}
+     */
+    public WaiterList(int order) {
+        if(order!=FIFO && order!=LIFO && order!=ID)
+            throw new IllegalArgumentException("Unknown wake order "+order);
+        this.order = order;
+        this.waiters = new Stage[2];
+        this.size = 0;
+    }
+
+    /**
+     * Parses the name of a wake order.
+     *
+     * @param order One of fifo, lifo or id
+     * @return The matching order constant
+     * @throws IllegalArgumentException if the order is not known
+     */
+    public static int parseOrder(String order) {
+        switch (order) {
+            case "fifo":
+                return FIFO;
+            case "lifo":
+                return LIFO;
+            case "id":
+                return ID;
+            default:
+                throw new IllegalArgumentException("Unknown wake order '"+order+"' expected fifo, lifo or id");
+        }
+    }
+
+    /**
+     * Adds a stage to the list. A stage must not be added while it is already in the list.
+     *
+     * @param stage The stage that has started waiting
+     */
+    public void add(Stage stage) {
+        if(size==waiters.length)
+            waiters = Arrays.copyOf(waiters,size*2);
+
+        int position = size;
+        if(order==ID) {
+            //keep the list sorted by id, lists are short so shifting is cheap
+            while (position>0 && waiters[position-1].getId()>stage.getId()) {
+                waiters[position] = waiters[position-1];
+                position--;
+            }
+        }
+        waiters[position] = stage;
+        size++;
+    }
+
+    /**
+     * Removes the next stage to wake.
+     *
+     * @return The removed stage or null if no stage is waiting
+     */
+    public Stage poll() {
+        if(size==0)
+            return null;
+
+        size--;
+        if(order==LIFO) {
+            Stage stage = waiters[size];
+            waiters[size] = null;
+            return stage;
+        }
+
+        Stage stage = waiters[0];
+        System.arraycopy(waiters,1,waiters,0,size);
+        waiters[size] = null;
+        return stage;
+    }
+
+    /**
+     * @return True if no stage is waiting
+     */
+    public boolean isEmpty() {
+        return size==0;
+    }
+
+    /**
+     * @return The amount of stages waiting
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return A new list with the same order holding the same stages
+     */
+    public WaiterList copy() {
+        WaiterList copy = new WaiterList(order);
+        copy.waiters = Arrays.copyOf(waiters,Math.max(size,2));
+        copy.size = size;
+        return copy;
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.Arrays;
+
 /**
  * File: Warehouse.java
  *
@@ -6,83 +8,156 @@
  * Program Description: The final resting place for widgets. This class takes widgets that have completed their journey in the production line
  * and calculates statistics on them. The widgets are not actually stored in memory here but rather pass through methods that do statistical calculations
  * to get meaningful information
+ *
+ * Each finished widget is counted against its route from the {@link RouteTable}, which takes O(1) time whatever the
+ * layout of the line. Every other production path statistic, such as the amount of widgets that went through a pair
+ * of stages, is worked out from the route counts when it is asked for.
+ *
+ * If asked to, the warehouse also records the lead time of each widget, from being created to reaching the warehouse,
+ * in a {@link Histogram} so the percentiles of the lead time can be printed.
  */
 public class Warehouse {
 
+    private final RouteTable routes;
     private int totalInStorage;
-    private int totalA;
-    private int totalB;
-    private int threeAFiveA;
-    private int threeAFiveB;
-    private int threeBFiveA;
-    private int threeBFiveB;
-
-    public void offer(Widget widget) {
-        //just delete the widget to save memory
-        totalInStorage++;
-        getProductionPaths(widget);
-    }
+    private long[] routeCounts; //amount of finished widgets on each route, indexed by route id
+    private BatchMeans batchMeans; //the widgets finished in each batch of the run, for the standard error of the throughput
+    private Histogram leadTimes; //null unless lead times are recorded
+    private double since; //widgets created before this, during the warm-up, are not counted in the lead times
 
     /**
-     * Calculates the following statistics from a widget
-     *   - the amount of widgets created from s0a and s0b
-     *   - the amount of widgets that passed the following production lines
-     *       - s3a -> s5a
-     *       - s3b -> s5a
-     *       - s3b -> s5a
-     *       - s3b -> s5b
+     * Creates a new empty warehouse.
      *
-     *  Preconditions: The widget has passed through the {@link ProductionLine} in a running
-     *  simulation.
-     *
-     * @param widget The widget that has gone through the production line
+     * @param routes The routes of the production line the warehouse is at the end of
      */
-    private void getProductionPaths(Widget widget) {
-        boolean fiveA = false;
-        boolean fiveB = false;
-        boolean threeA = false;
-        boolean threeB = false;
-
-        for (Stage stage : widget.getStamps()) {
-
-            //Get the creational Stages
-            if (stage.getName().equals("S0a"))
-                totalA++;
+    public Warehouse(RouteTable routes) {
+        this.routes = routes;
+        this.routeCounts = new long[16];
+        this.batchMeans = new BatchMeans(1);
+    }
 
-            if (stage.getName().equals("S0b"))
-                totalB++;
+    /**
+     * Stores a finished widget by its route.
+     *
+     * @param widgets The widgets of the line
+     * @param widget The handle of the finished widget
+     */
+    public void offer(WidgetTable widgets, int widget) {
+        //only the route and the lead time are kept, the final stage releases the widget afterwards
+        totalInStorage++;
+        int route = widgets.getRoute(widget);
+        if(route>=routeCounts.length)
+            routeCounts = Arrays.copyOf(routeCounts,Math.max(route+1,routeCounts.length*2));
+        routeCounts[route]++;
+    }
 
-            //work out which stages the widget went through in the 3a,3b,5a,5b chain
-            if(stage.getName().equals("S3a"))
-                threeA = true;
+    /**
+     * Stores a finished widget and counts it towards the throughput of the batch it finished in.
+     *
+     * @param widgets The widgets of the line
+     * @param widget The handle of the finished widget
+     * @param time When the widget finished
+     */
+    public void offer(WidgetTable widgets, int widget, double time) {
+        offer(widgets,widget);
+        batchMeans.add(time,0,1);
+        if(leadTimes!=null) {
+            double created = widgets.getCreationTime(widget);
+            if(created>=since)
+                leadTimes.record(time-created);
+        }
+    }
 
-            if(stage.getName().equals("S3b"))
-                threeB = true;
+    /**
+     * Starts recording the lead time of every widget offered with the time it finished.
+     */
+    public void recordLeadTimes() {
+        if(leadTimes==null)
+            leadTimes = new Histogram();
+    }
 
-            if (stage.getName().equals("S5a"))
-                fiveA = true;
+    /**
+     * @return The time each widget took from being created to reaching the warehouse, or null if lead times are not
+     *         recorded, see {@link #recordLeadTimes()}
+     */
+    public Histogram getLeadTimes() {
+        return leadTimes;
+    }
 
-            if(stage.getName().equals("S5b"))
-                fiveB = true;
-        }
+    /**
+     * Adds the lead times of another warehouse to these, used to merge the warehouses of the segments of a
+     * {@link ParallelLine}. Nothing is added if the other warehouse does not record lead times.
+     *
+     * @param other Another warehouse
+     */
+    public void mergeLeadTimes(Warehouse other) {
+        if(other.leadTimes==null)
+            return;
+        recordLeadTimes();
+        leadTimes.merge(other.leadTimes);
+    }
 
-        //add totals for the widgets that went down the paths.
-        //get widgets that went down 3a and 5a
-        if (threeA && fiveA)
-            threeAFiveA++;
+    /**
+     * @return The widgets finished in each batch of the run
+     */
+    public BatchMeans getBatchMeans() {
+        return batchMeans;
+    }
 
-        //3a and 5b
-        if (threeA && fiveB)
-            threeAFiveB++;
+    /**
+     * Adds the batches of another warehouse to these, used to merge the warehouses of the segments of a
+     * {@link ParallelLine}.
+     *
+     * @param other A warehouse of a line run for the same time
+     */
+    public void mergeBatchMeans(Warehouse other) {
+        batchMeans.merge(other.batchMeans);
+    }
 
-        if (threeB && fiveA)
-            threeBFiveA++;
+    /**
+     * Stores finished widgets by their route alone, used to merge the warehouses of the segments of a {@link ParallelLine}.
+     *
+     * @param route The id of a route
+     * @param count The amount of widgets that took the route
+     */
+    public void store(int route, long count) {
+        totalInStorage += (int) count;
+        if(route>=routeCounts.length)
+            routeCounts = Arrays.copyOf(routeCounts,Math.max(route+1,routeCounts.length*2));
+        routeCounts[route] += count;
+    }
 
-        if (threeB && fiveB)
-            threeBFiveB++;
+    /**
+     * Forgets every widget stored so far, used to delete the warm-up of a run.
+     *
+     * @param time The time the statistics start from
+     */
+    void resetStatistics(double time) {
+        totalInStorage = 0;
+        Arrays.fill(routeCounts,0);
+        batchMeans.reset(time);
+        since = time;
+        if(leadTimes!=null)
+            leadTimes.reset();
+    }
 
+    /**
+     * @return A copy of the amount of widgets on each route and the lead times, so an optimistic {@link ParallelLine} can roll it back
+     */
+    State save() {
+        return new State(totalInStorage,routeCounts.clone(),batchMeans.copy(),leadTimes==null ? null : leadTimes.copy(),since);
     }
 
+    /**
+     * @param state A state saved from this warehouse, which is copied so it can be restored again later
+     */
+    void restore(State state) {
+        totalInStorage = state.totalInStorage;
+        routeCounts = state.routeCounts.clone();
+        batchMeans = state.batchMeans.copy();
+        leadTimes = state.leadTimes==null ? null : state.leadTimes.copy();
+        since = state.since;
+    }
 
     /**
      * Precondition: The simulation has completed
@@ -96,55 +171,95 @@ public class Warehouse {
     /**
      * Precondition: The simulation has completed
      *
-     * @return The amount of widgets that are in the storage that were created at s0a
+     * @param route The id of a route
+     * @return The amount of widgets in storage that took exactly that route
      */
-    public int getTotalA() {
-        return totalA;
+    public long getWidgets(int route) {
+        return route<routeCounts.length ? routeCounts[route] : 0;
     }
 
     /**
-     * Precondition: The simulation has completed
+     * Counts the widgets that went through every one of the given stages, for example passing the ids of s3a and s5a
+     * gives the amount of widgets that took the s3a -> s5a path and passing only s0a gives the amount created at s0a.
      *
-     * @return The amount of widgets that are in the storage that were created at s0b
-     */
-    public int getTotalB() {
-        return totalB;
-    }
-
-    /**
      * Precondition: The simulation has completed
      *
-     * @return The amount of widgets that passed through s3a and s5a
+     * @param stages The ids of the stages
+     * @return The amount of widgets in storage that went through all of the stages
      */
-    public int getThreeAFiveA() {
-        return threeAFiveA;
+    public long countThrough(int... stages) {
+        long total = 0;
+        for(int route=0;route<routeCounts.length;route++) {
+            if(routeCounts[route]==0)
+                continue;
+
+            boolean all = true;
+            for(int stage : stages) {
+                if(!routes.contains(route,stage)) {
+                    all = false;
+                    break;
+                }
+            }
+            if(all)
+                total += routeCounts[route];
+        }
+        return total;
     }
 
     /**
+     * Counts the widgets that went through each stage. For a stage with parallel alternatives this is the amount of
+     * widgets that took that branch.
+     *
      * Precondition: The simulation has completed
      *
-     * @return The amount of widgets that passed through s3a and s5b
+     * @param stageCount The amount of stages on the line
+     * @return The amount of widgets in storage that went through each stage, indexed by stage id
      */
-    public int getThreeAFiveB() {
-        return threeAFiveB;
+    public long[] getStageCounts(int stageCount) {
+        long[] counts = new long[stageCount];
+        for(int route=0;route<routeCounts.length;route++) {
+            if(routeCounts[route]==0)
+                continue;
+            for(int current=route;current!=RouteTable.EMPTY;current=routes.getParent(current))
+                counts[routes.getLastStage(current)] += routeCounts[route];
+        }
+        return counts;
     }
 
     /**
+     * Finds the most common routes. Routes with the same amount of widgets are ordered by id.
+     *
      * Precondition: The simulation has completed
      *
-     * @return The amount of widgets that passed through s3b and s5a
+     * @param k The maximum amount of routes to return
+     * @return The ids of at most k routes taken by at least one widget, the most common first
      */
-    public int getThreeBFiveA() {
-        return threeBFiveA;
+    public int[] getTopRoutes(int k) {
+        int taken = 0;
+        for(long count : routeCounts) {
+            if(count>0)
+                taken++;
+        }
+
+        Integer[] order = new Integer[taken];
+        int index = 0;
+        for(int route=0;route<routeCounts.length;route++) {
+            if(routeCounts[route]>0)
+                order[index++] = route;
+        }
+        Arrays.sort(order,(a,b) -> Long.compare(routeCounts[b],routeCounts[a]));
+
+        int[] top = new int[Math.min(k,taken)];
+        for(int i=0;i<top.length;i++)
+            top[i] = order[i];
+        return top;
     }
 
     /**
-     * Precondition: The simulation has completed
-     *
-     * @return The amount of widgets that passed through s3b and s5b
+     * @return The routes of the production line the warehouse is at the end of
      */
-    public int getThreeBFiveB() {
-        return threeBFiveB;
+    public RouteTable getRoutes() {
+        return routes;
     }
 
     /**
@@ -155,4 +270,24 @@ public class Warehouse {
     public String toString() {
         return "Warehouse[storage=" + totalInStorage() + "]";
     }
+
+    /**
+     * The counts of a warehouse, see {@link #save()}.
+     */
+    static class State {
+
+        private final int totalInStorage;
+        private final long[] routeCounts;
+        private final BatchMeans batchMeans;
+        private final Histogram leadTimes;
+        private final double since;
+
+        private State(int totalInStorage, long[] routeCounts, BatchMeans batchMeans, Histogram leadTimes, double since) {
+            this.totalInStorage = totalInStorage;
+            this.routeCounts = routeCounts;
+            this.batchMeans = batchMeans;
+            this.leadTimes = leadTimes;
+            this.since = since;
+        }
+    }
 }
@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+/**
+ * File: WarmupDetector.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Decides when a run has warmed up using MSER-5. A line starts out empty, so the statistics of the
+ * first part of a run are biased by the line filling up. The detector is fed one observation per fixed interval of the
+ * run, which are grouped into batches of 5 and averaged. For each truncation point d the marginal standard error of the
+ * batch means after d is
+ *   MSER(d) = sum of (Z[j] - mean after d)^2 over j > d, divided by (k - d)^2
+ * and the point that minimises it marks the end of the transient. The transient raises the variance of the batch means
+ * while cutting it loses observations, so the minimum lands where the transient ends.
+ *
+ * The detector runs while the line does, checking again after every batch. A truncation point in the second half of the
+ * batches means the transient may still be going, so the detector only decides once the point is in the first half, and
+ * the last few batches are never a truncation point as so few means always have a small error. A slow transient looks
+ * like noise over the first few batches, so nothing is decided before 30 batches.
+ *
+ * The statistics of a line cannot be wound back to the truncation point, so the line resets them at the observation
+ * where the detector decides. That time is after the transient, and is the warm-up the line reports.
+ */
+public class WarmupDetector {
+
+    private static final int BATCH = 5; //observations averaged into each batch mean
+    private static final int MIN_BATCHES = 30; //batches needed before deciding at all
+    private static final int TAIL = 5; //batches that must remain after any truncation point
+
+    private double[] means;
+    private int batches;
+    private double batchSum;
+    private int inBatch;
+    private int truncation; //in batches, -1 until the detector has decided
+
+    public WarmupDetector() {
+        this.means = new double[64];
+        this.truncation = -1;
+    }
+
+    /**
+     * Adds the next observation of the run.
+     *
+     * @param observation The average of some output of the line over the last interval, such as the widgets in the queues
+     * @return True if the run has now warmed up, after which further observations are ignored
+     */
+    public boolean add(double observation) {
+        if(truncation>=0)
+            return true;
+
+        batchSum += observation;
+        if(++inBatch<BATCH)
+            return false;
+
+        if(batches==means.length)
+            means = Arrays.copyOf(means,batches*2);
+        means[batches++] = batchSum/BATCH;
+        batchSum = 0;
+        inBatch = 0;
+        if(batches<MIN_BATCHES)
+            return false;
+
+        int best = minimise();
+        if(best>batches/2)
+            return false;
+        truncation = best;
+        return true;
+    }
+
+    /**
+     * Works out MSER(d) for every allowed d from the end backwards, keeping running sums of the means after d so each
+     * check is linear in the amount of batches.
+     *
+     * @return The truncation point with the smallest marginal standard error, in batches
+     */
+    private int minimise() {
+        double sum = 0;
+        double squares = 0;
+        for(int j=batches-1;j>=batches-TAIL;j--) {
+            sum += means[j];
+            squares += means[j]*means[j];
+        }
+
+        int best = batches-TAIL;
+        double bestError = Double.POSITIVE_INFINITY;
+        for(int d=batches-TAIL;d>=0;d--) {
+            //sum and squares hold the means after d, that is means[d..batches-1]
+            int n = batches-d;
+            double error = (squares - sum*sum/n)/((double) n*n);
+            if(error<=bestError) {
+                bestError = error;
+                best = d;
+            }
+            if(d>0) {
+                sum += means[d-1];
+                squares += means[d-1]*means[d-1];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return True once a truncation point has been found
+     */
+    public boolean isDecided() {
+        return truncation>=0;
+    }
+}
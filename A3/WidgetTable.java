@@ -0,0 +1,273 @@
+import java.util.Arrays;
+
+/**
+ * File: WidgetTable.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Holds every widget on a production line. A widget is an int handle into a set of parallel arrays,
+ * one for each thing known about a widget: its id, the code of the stage that created it, when it was created, the
+ * stages it has been through and the route it has taken so far. The stages and queues pass the handles around instead
+ * of objects, so moving a widget along the line never allocates. A name such as 123A is only formatted from the id and
+ * the code when a widget is printed.
+ *
+ * A widget is released once it reaches the warehouse and its handle is given to the next widget created, so the table
+ * only ever grows to the amount of widgets on the line at once however long the line runs.
+ *
+ * The stamps are a bit set indexed by {@link Stage#getId()}. The first 64 stages fit in a single long, so a widget on a
+ * normal sized line does not need any storage for its stamps besides that long. Larger lines spill the remaining stages
+ * into an array of longs that is only created when the widget reaches one of those stages, and is kept for whichever
+ * widget takes the handle next.
+ */
+public class WidgetTable {
+
+    public static final int NONE = -1; //the handle of no widget, for example a stage that is starved
+    private static final long FREE = -1; //the id of a handle that is not a widget
+
+    private long[] ids; //the id of each widget from the IdGenerator of the line, FREE if the handle is free
+    private char[] origins; //the code of the stage that created each widget, for example A for s0a
+    private double[] creationTimes;
+    private long[] stamps; //bit i is set if the widget has been to the stage with id i, for the first 64 stages
+    private long[][] extraStamps; //the stamps of stages with an id of 64 or more. Null until needed
+    private int[] routes; //the id of the route taken so far in the RouteTable of the line
+
+    private int[] free; //the handles released and not yet given out again, a stack
+    private int freeCount;
+    private int used; //every handle below this has been given out at least once
+
+    public WidgetTable() {
+        this(16);
+    }
+
+    /**
+     * @param capacity The amount of widgets the table holds before it first needs to grow
+     */
+    public WidgetTable(int capacity) {
+        capacity = Math.max(capacity,1);
+        this.ids = new long[capacity];
+        this.origins = new char[capacity];
+        this.creationTimes = new double[capacity];
+        this.stamps = new long[capacity];
+        this.extraStamps = new long[capacity][];
+        this.routes = new int[capacity];
+        this.free = new int[capacity];
+    }
+
+    private WidgetTable(WidgetTable other) {
+        this.ids = other.ids.clone();
+        this.origins = other.origins.clone();
+        this.creationTimes = other.creationTimes.clone();
+        this.stamps = other.stamps.clone();
+        this.extraStamps = new long[other.extraStamps.length][];
+        for(int i=0;i<extraStamps.length;i++)
+            extraStamps[i] = other.extraStamps[i]==null ? null : other.extraStamps[i].clone();
+        this.routes = other.routes.clone();
+        this.free = other.free.clone();
+        this.freeCount = other.freeCount;
+        this.used = other.used;
+    }
+
+    /**
+     * Creates a new widget with no stamps on the empty route, reusing a released handle if there is one.
+     *
+     * @param id A unique id of the widget, generated by the {@link IdGenerator} of the line
+     * @param origin The code of the stage that created the widget
+     * @param time When the widget was created
+     * @return The handle of the widget
+     */
+    public int create(long id, char origin, double time) {
+        int widget;
+        if(freeCount>0) {
+            widget = free[--freeCount];
+            stamps[widget] = 0;
+            if(extraStamps[widget]!=null)
+                Arrays.fill(extraStamps[widget],0);
+        } else {
+            if(used==ids.length)
+                grow();
+            widget = used++;
+        }
+        ids[widget] = id;
+        origins[widget] = origin;
+        creationTimes[widget] = time;
+        routes[widget] = RouteTable.EMPTY;
+        return widget;
+    }
+
+    private void grow() {
+        int capacity = ids.length*2;
+        ids = Arrays.copyOf(ids,capacity);
+        origins = Arrays.copyOf(origins,capacity);
+        creationTimes = Arrays.copyOf(creationTimes,capacity);
+        stamps = Arrays.copyOf(stamps,capacity);
+        extraStamps = Arrays.copyOf(extraStamps,capacity);
+        routes = Arrays.copyOf(routes,capacity);
+        free = Arrays.copyOf(free,capacity);
+    }
+
+    /**
+     * Frees the handle of a widget that has left the line, so it can be given to a new widget. The handle must not be
+     * used again until then.
+     *
+     * @param widget The handle of a widget
+     * @throws IllegalStateException if the widget has already been released
+     */
+    public void release(int widget) {
+        if(ids[widget]==FREE)
+            throw new IllegalStateException("Widget has already been released");
+        ids[widget] = FREE;
+        free[freeCount++] = widget;
+    }
+
+    /**
+     * This marks that the widget has visited the given stage
+     *
+     * @param widget The handle of the widget
+     * @param stage The id of the stage which the widget has visited.
+     * @throws IllegalStateException if the widget has already been through the stage
+     */
+    public void addStamp(int widget, int stage) {
+        if(stage<Long.SIZE) {
+            long bit = 1L << stage;
+            if((stamps[widget] & bit)!=0)
+                throw new IllegalStateException("Widget cannot go through same stage twice!");
+            stamps[widget] |= bit;
+            return;
+        }
+
+        int word = stage/Long.SIZE - 1;
+        long[] extra = extraStamps[widget];
+        if(extra==null) {
+            extra = extraStamps[widget] = new long[word+1];
+        } else if(word>=extra.length) {
+            extra = extraStamps[widget] = Arrays.copyOf(extra,word+1);
+        }
+        long bit = 1L << stage; //shifts only use the lowest 6 bits of the id
+        if((extra[word] & bit)!=0)
+            throw new IllegalStateException("Widget cannot go through same stage twice!");
+        extra[word] |= bit;
+    }
+
+    /**
+     * Checks whether a widget has visited a stage.
+     *
+     * @param widget The handle of the widget
+     * @param stage The id of the stage
+     * @return True if the widget has been stamped by the stage
+     */
+    public boolean hasStamp(int widget, int stage) {
+        if(stage<Long.SIZE)
+            return (stamps[widget] & (1L << stage))!=0;
+
+        int word = stage/Long.SIZE - 1;
+        long[] extra = extraStamps[widget];
+        return extra!=null && word<extra.length && (extra[word] & (1L << stage))!=0;
+    }
+
+    /**
+     * Forgets every stamp of a widget. Each segment of a {@link ParallelLine} numbers its stages from 0, so a widget is
+     * cleared when it crosses into the next segment.
+     *
+     * @param widget The handle of the widget
+     */
+    public void clearStamps(int widget) {
+        stamps[widget] = 0;
+        if(extraStamps[widget]!=null)
+            Arrays.fill(extraStamps[widget],0);
+    }
+
+    /**
+     * @param widget The handle of the widget
+     * @return The id of the route the widget has taken so far, see {@link RouteTable}
+     */
+    public int getRoute(int widget) {
+        return routes[widget];
+    }
+
+    /**
+     * @param widget The handle of the widget
+     * @param route The id of the route the widget has taken so far, see {@link RouteTable}
+     */
+    public void setRoute(int widget, int route) {
+        routes[widget] = route;
+    }
+
+    /**
+     * @param widget The handle of the widget
+     * @return The unique id of the widget
+     */
+    public long getId(int widget) {
+        return ids[widget];
+    }
+
+    /**
+     * A unique name of the widget in the form ID + Creation Stage Code, for example 0A, or 5B. The name is formatted
+     * each time it is asked for, so it should only be used for printing.
+     *
+     * @param widget The handle of the widget
+     * @return The name of the widget
+     */
+    public String getName(int widget) {
+        return ids[widget] + String.valueOf(origins[widget]);
+    }
+
+    /**
+     * @param widget The handle of the widget
+     * @return The code of the stage that created the widget, for example A for s0a
+     */
+    public char getOrigin(int widget) {
+        return origins[widget];
+    }
+
+    /**
+     * @param widget The handle of the widget
+     * @return When the widget was created
+     */
+    public double getCreationTime(int widget) {
+        return creationTimes[widget];
+    }
+
+    /**
+     * @return The amount of widgets that have been created and not released
+     */
+    public int getLiveCount() {
+        return used - freeCount;
+    }
+
+    /**
+     * @return The amount of widgets the table holds before it needs to grow
+     */
+    public int getCapacity() {
+        return ids.length;
+    }
+
+    /**
+     * @return An independent copy, so an optimistic {@link ParallelLine} can roll the widgets back
+     */
+    public WidgetTable copy() {
+        return new WidgetTable(this);
+    }
+
+    /**
+     * Represents a widget as a string. If the handle is not a widget it will be called a "Raw Widget" otherwise it will
+     * be called "Widget " followed by its name
+     *
+     * @param widget The handle of the widget
+     * @return The widget as a string
+     */
+    public String toString(int widget) {
+        if(widget==NONE || ids[widget]==FREE)
+            return "Raw Widget";
+
+        return "Widget "+getName(widget);
+    }
+
+    /**
+     * Represents the table as a string
+     *
+     * @return The table as a string
+     */
+    public String toString() {
+        return "WidgetTable[live="+getLiveCount()+", capacity="+getCapacity()+"]";
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * File: Ziggurat.java
+ *
+ * Author: Jacob Boyce
+ * Course: SENG2200
+ * Program Description: Samples the standard normal and unit exponential distributions with the ziggurat method of Marsaglia
+ * and Tsang. The area under the density is covered by 256 horizontal layers of equal area, the base layer also holding the
+ * tail. A sample picks a layer and a point across it from a single 64 bit number, and about 99% of the time the point lies
+ * inside the density and is returned straight away. Only the thin wedges at the edge of each layer and the tail need the
+ * density or a logarithm to be evaluated. The tables are built once when the class is loaded.
+ */
+public final class Ziggurat {
+
+    private static final int LAYERS = 256;
+
+    private static final double NORMAL_R = 3.6541528853610088; //where the tail of the normal starts
+    private static final double NORMAL_V = 0.00492867323399; //the area of each layer of the normal
+    private static final double EXPONENTIAL_R = 7.69711747013104972;
+    private static final double EXPONENTIAL_V = 0.0039496598225815571993;
+
+    //x[i] is the right edge of layer i, f[i] is the density at x[i]. Layer i lies between f[i] and f[i+1].
+    private static final double[] NORMAL_X = new double[LAYERS+1];
+    private static final double[] NORMAL_F = new double[LAYERS+1];
+    private static final double[] EXPONENTIAL_X = new double[LAYERS+1];
+    private static final double[] EXPONENTIAL_F = new double[LAYERS+1];
+
+    static {
+        //the densities are left unnormalised, exp(-x^2/2) and exp(-x)
+        NORMAL_X[0] = NORMAL_V / Math.exp(-0.5*NORMAL_R*NORMAL_R);
+        NORMAL_X[1] = NORMAL_R;
+        EXPONENTIAL_X[0] = EXPONENTIAL_V / Math.exp(-EXPONENTIAL_R);
+        EXPONENTIAL_X[1] = EXPONENTIAL_R;
+        for(int i=1;i<LAYERS-1;i++) {
+            NORMAL_X[i+1] = Math.sqrt(-2 * Math.log(NORMAL_V/NORMAL_X[i] + Math.exp(-0.5*NORMAL_X[i]*NORMAL_X[i])));
+            EXPONENTIAL_X[i+1] = -Math.log(EXPONENTIAL_V/EXPONENTIAL_X[i] + Math.exp(-EXPONENTIAL_X[i]));
+        }
+        NORMAL_X[LAYERS] = 0;
+        EXPONENTIAL_X[LAYERS] = 0;
+        for(int i=0;i<=LAYERS;i++) {
+            NORMAL_F[i] = Math.exp(-0.5*NORMAL_X[i]*NORMAL_X[i]);
+            EXPONENTIAL_F[i] = Math.exp(-EXPONENTIAL_X[i]);
+        }
+    }
+
+    private Ziggurat() {
+    }
+
+    /**
+     * @param random The stream to draw from
+     * @return A standard normal random number
+     */
+    public static double normal(RandomStream random) {
+        while (true) {
+            //the low 8 bits pick the layer, bit 8 the sign and the top 53 bits the point across the layer
+            long bits = random.nextBits();
+            int layer = (int) (bits & 0xff);
+            double x = ((bits >>> 11) * 0x1.0p-53) * NORMAL_X[layer];
+            boolean negative = (bits & 0x100)!=0;
+
+            if(x < NORMAL_X[layer+1])
+                return negative ? -x : x;
+
+            if(layer==0) {
+                //the tail beyond r, by Marsaglia's method
+                double a;
+                double b;
+                do {
+                    a = -Math.log(positiveUniform(random)) / NORMAL_R;
+                    b = -Math.log(positiveUniform(random));
+                } while (b+b < a*a);
+                return negative ? -(NORMAL_R+a) : NORMAL_R+a;
+            }
+
+            //the wedge, accept if a uniform height lies under the density
+            double y = NORMAL_F[layer] + random.nextDouble() * (NORMAL_F[layer+1] - NORMAL_F[layer]);
+            if(y < Math.exp(-0.5*x*x))
+                return negative ? -x : x;
+        }
+    }
+
+    /**
+     * @param random The stream to draw from
+     * @return An exponential random number with a mean of 1
+     */
+    public static double exponential(RandomStream random) {
+        double offset = 0; //the exponential is memoryless so the tail is r plus another exponential
+        while (true) {
+            long bits = random.nextBits();
+            int layer = (int) (bits & 0xff);
+            double x = ((bits >>> 11) * 0x1.0p-53) * EXPONENTIAL_X[layer];
+
+            if(x < EXPONENTIAL_X[layer+1])
+                return offset + x;
+
+            if(layer==0) {
+                offset += EXPONENTIAL_R;
+                continue;
+            }
+
+            double y = EXPONENTIAL_F[layer] + random.nextDouble() * (EXPONENTIAL_F[layer+1] - EXPONENTIAL_F[layer]);
+            if(y < Math.exp(-x))
+                return offset + x;
+        }
+    }
+
+    /**
+     * @param random The stream to draw from
+     * @return A uniform random number in (0,1], which is safe to take the logarithm of
+     */
+    public static double positiveUniform(RandomStream random) {
+        return ((random.nextBits() >>> 11) + 1) * 0x1.0p-53;
+    }
+}